@@ -1,47 +1,133 @@
 package com.aidoctor.config;
 
+import com.aidoctor.service.AwsMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.textract.TextractClient;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.textract.TextractAsyncClient;
+import software.amazon.awssdk.services.textract.TextractAsyncClientBuilder;
 
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * AWS clients, shared by the whole app: Textract and S3 async clients on one
+ * Netty (non-blocking) connection pool, with call timeouts and Micrometer
+ * metrics (AwsMetrics). Without aws.accessKeyId, credentials come from the
+ * SDK's default chain (environment, profile, instance role).
+ */
 @Configuration
 public class AwsConfig {
 
-    @Value("${aws.accessKeyId}")
+    @Value("${aws.accessKeyId:}")
     private String accessKeyId;
 
-    @Value("${aws.secretAccessKey}")
+    @Value("${aws.secretAccessKey:}")
     private String secretAccessKey;
 
-    @Value("${aws.region}")
+    @Value("${aws.region:ap-south-1}")
     private String region;
 
-    @Bean
-    public S3Client s3Client() {
-        return S3Client.builder()
-                .region(Region.of(region))
-                .credentialsProvider(
-                        StaticCredentialsProvider.create(
-                                AwsBasicCredentials.create(accessKeyId, secretAccessKey)
-                        )
-                )
+    // optional endpoint overrides, e.g. the in-process fakes of the "fake" profile
+    @Value("${aws.textract.endpoint:}")
+    private String textractEndpoint;
+
+    @Value("${aws.s3.endpoint:}")
+    private String s3Endpoint;
+
+    // concurrent requests across all AWS clients; more wait up to acquire-timeout for a connection
+    @Value("${aws.http.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${aws.http.max-pending-acquires:10000}")
+    private int maxPendingAcquires;
+
+    @Value("${aws.http.acquire-timeout:60s}")
+    private Duration acquireTimeout;
+
+    @Value("${aws.http.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${aws.http.read-timeout:60s}")
+    private Duration readTimeout;
+
+    @Value("${aws.http.max-idle-time:60s}")
+    private Duration maxIdleTime;
+
+    // one attempt, and the whole call including retries
+    @Value("${aws.api-call-attempt-timeout:60s}")
+    private Duration apiCallAttemptTimeout;
+
+    @Value("${aws.api-call-timeout:3m}")
+    private Duration apiCallTimeout;
+
+    @Bean(destroyMethod = "close")
+    public SdkAsyncHttpClient awsHttpClient() {
+        return NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxConnections)
+                .maxPendingConnectionAcquires(maxPendingAcquires)
+                .connectionAcquisitionTimeout(acquireTimeout)
+                .connectionTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .writeTimeout(readTimeout)
+                .connectionMaxIdleTime(maxIdleTime)
                 .build();
     }
 
-    @Bean
-    public TextractClient textractClient() {
-        return TextractClient.builder()
+    @Bean(destroyMethod = "close")
+    public TextractAsyncClient textractClient(SdkAsyncHttpClient awsHttpClient, AwsMetrics metrics) {
+        TextractAsyncClientBuilder builder = TextractAsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials())
+                .httpClient(awsHttpClient)
+                .overrideConfiguration(overrides(metrics));
+        if (!textractEndpoint.isBlank()) {
+            builder.endpointOverride(URI.create(textractEndpoint));
+        }
+        return builder.build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public S3AsyncClient s3Client(SdkAsyncHttpClient awsHttpClient, AwsMetrics metrics) {
+        S3AsyncClientBuilder builder = S3AsyncClient.builder()
                 .region(Region.of(region))
-                .credentialsProvider(
-                        StaticCredentialsProvider.create(
-                                AwsBasicCredentials.create(accessKeyId, secretAccessKey)
-                        )
-                )
+                .credentialsProvider(credentials())
+                .httpClient(awsHttpClient)
+                .overrideConfiguration(overrides(metrics));
+        if (!s3Endpoint.isBlank()) {
+            // S3-compatible stand-ins (the fake profile) want path-style URLs and plain bodies
+            builder.endpointOverride(URI.create(s3Endpoint))
+                    .serviceConfiguration(S3Configuration.builder()
+                            .pathStyleAccessEnabled(true)
+                            .chunkedEncodingEnabled(false)
+                            .build());
+        }
+        return builder.build();
+    }
+
+    private AwsCredentialsProvider credentials() {
+        if (accessKeyId.isBlank() || secretAccessKey.isBlank()) {
+            return DefaultCredentialsProvider.create();
+        }
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKeyId, secretAccessKey));
+    }
+
+    private ClientOverrideConfiguration overrides(AwsMetrics metrics) {
+        return ClientOverrideConfiguration.builder()
+                .apiCallAttemptTimeout(apiCallAttemptTimeout)
+                .apiCallTimeout(apiCallTimeout)
+                .addMetricPublisher(metrics)
                 .build();
     }
 }
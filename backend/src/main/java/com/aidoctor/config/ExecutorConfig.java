@@ -0,0 +1,72 @@
+package com.aidoctor.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for fan-out work (parallel LLM calls inside one request, files of a batch upload).
+ * Kept separate from the Tomcat pool so a burst of uploads cannot starve it.
+ * With spring.threads.virtual.enabled every task gets its own virtual thread;
+ * concurrency is then bounded by the LLM limiter, not by the pool size.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${app.llm-executor.threads:16}")
+    private int llmThreads;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // 0 = one thread per core
+    @Value("${app.cpu-executor.threads:0}")
+    private int cpuThreads;
+
+    @Value("${app.batch-executor.threads:8}")
+    private int batchThreads;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService llmExecutor() {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("llm-", 1).factory());
+        }
+        return Executors.newFixedThreadPool(llmThreads, namedDaemon("llm-"));
+    }
+
+    /**
+     * CPU-bound work (image decoding, deskew, recompression). Always platform
+     * threads, at most one per core, so a burst of uploads queues here instead
+     * of oversubscribing the CPU.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService cpuExecutor() {
+        int threads = cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(threads, namedDaemon("cpu-"));
+    }
+
+    /**
+     * Per-file work of batch OCR uploads (OCR, then the report). At most
+     * app.batch-executor.threads files are in progress at once across all
+     * batches; the threads are virtual when virtual threads are enabled.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService batchExecutor() {
+        ThreadFactory factory = virtualThreads ? Thread.ofVirtual().name("batch-", 1).factory() : namedDaemon("batch-");
+        return Executors.newFixedThreadPool(batchThreads, factory);
+    }
+
+    private static ThreadFactory namedDaemon(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
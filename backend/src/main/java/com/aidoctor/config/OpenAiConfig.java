@@ -0,0 +1,59 @@
+package com.aidoctor.config;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared HTTP client for every LLM call.
+ * One connection pool (keep-alive, HTTP/2 when the server offers it) so
+ * requests reuse warm TLS connections instead of handshaking each time.
+ */
+@Configuration
+public class OpenAiConfig {
+
+    @Value("${openai.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${openai.http.read-timeout-ms:60000}")
+    private long readTimeoutMs;
+
+    @Value("${openai.http.call-timeout-ms:120000}")
+    private long callTimeoutMs;
+
+    @Value("${openai.http.max-idle-connections:16}")
+    private int maxIdleConnections;
+
+    @Value("${openai.http.keep-alive-ms:300000}")
+    private long keepAliveMs;
+
+    @Value("${openai.http.max-requests:64}")
+    private int maxRequests;
+
+    @Bean
+    public OkHttpClient openAiHttpClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        // all traffic goes to a single host, so the per-host cap is the real limit
+        dispatcher.setMaxRequestsPerHost(maxRequests);
+
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMs, TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .readTimeout(Duration.ofMillis(readTimeoutMs))
+                .writeTimeout(Duration.ofMillis(readTimeoutMs))
+                .callTimeout(Duration.ofMillis(callTimeoutMs))
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+}
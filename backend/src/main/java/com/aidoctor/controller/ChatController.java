@@ -3,7 +3,11 @@ package com.aidoctor.controller;
 import com.aidoctor.model.ChatRequest;
 import com.aidoctor.model.ChatResponse;
 import com.aidoctor.service.AiService;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/api/chat")
@@ -17,9 +21,28 @@ public class ChatController {
     }
 
     // endpoint that frontend expects: /api/chat/message
+    // earlier turns are remembered server-side under the conversationId returned with
+    // each reply; send it back to continue (the request's userId is not used for this)
     @PostMapping("/message")
     public ChatResponse chat(@RequestBody ChatRequest req) {
-        String reply = aiService.simpleChat(req.getText());
-        return new ChatResponse(reply);
+        String conversationId = aiService.conversation(req.getConversationId());
+        String reply = aiService.simpleChat(conversationId, req.getText());
+        return new ChatResponse(reply, conversationId);
+    }
+
+    /**
+     * Streaming variant of /message as Server-Sent Events.
+     * Emits one "conversation" event carrying the conversationId, "token" events as
+     * the model generates, then a single "done" event (or "error" if the call fails).
+     * The servlet thread is released immediately.
+     */
+    @PostMapping(value = "/message/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> chatStream(@RequestBody ChatRequest req) {
+        String conversationId = aiService.conversation(req.getConversationId());
+        return aiService.streamChat(conversationId, req.getText())
+                .map(token -> ServerSentEvent.<String>builder().event("token").data(token).build())
+                .startWith(ServerSentEvent.<String>builder().event("conversation").data(conversationId).build())
+                .concatWith(Mono.just(ServerSentEvent.<String>builder().event("done").data("").build()))
+                .onErrorResume(ex -> Mono.just(ServerSentEvent.<String>builder().event("error").data(ex.getMessage()).build()));
     }
 }
@@ -0,0 +1,37 @@
+package com.aidoctor.controller;
+
+import com.aidoctor.service.LlmException;
+import com.aidoctor.service.LlmUnavailableException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Maps LLM failures to proper HTTP errors instead of 500s:
+ * a degraded provider becomes 503 + Retry-After so clients back off.
+ */
+@RestControllerAdvice
+public class LlmErrorHandler {
+
+    @ExceptionHandler(LlmUnavailableException.class)
+    public ResponseEntity<?> handleUnavailable(LlmUnavailableException ex) {
+        return unavailable(ex.getMessage(), ex.getRetryAfterMs());
+    }
+
+    @ExceptionHandler(LlmException.class)
+    public ResponseEntity<?> handleLlm(LlmException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(Map.of("error", ex.getMessage()));
+    }
+
+    /** Shared by controllers that catch exceptions themselves. */
+    public static ResponseEntity<?> unavailable(String message, long retryAfterMs) {
+        long seconds = retryAfterMs > 0 ? Math.max(1, (retryAfterMs + 999) / 1000) : 5;
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .body(Map.of("error", message));
+    }
+}
@@ -1,13 +1,35 @@
 package com.aidoctor.controller;
 
+import com.aidoctor.model.OcrDocument;
+import com.aidoctor.service.LlmUnavailableException;
 import com.aidoctor.service.OcrService;
 import com.aidoctor.service.ReportService;
+import com.aidoctor.service.UploadSpooler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api/ocr")
@@ -16,11 +38,29 @@ public class OcrController {
 
     private final OcrService ocrService;
     private final ReportService reportService;
+    private final UploadSpooler spooler;
+    private final ExecutorService batchExecutor;
+
+    @Value("${ocr.batch.max-files:10}")
+    private int batchMaxFiles;
+
+    // a batch may take this long per round of app.batch-executor.threads files, up to ocr.batch.timeout
+    @Value("${ocr.batch.file-timeout:3m}")
+    private Duration batchFileTimeout;
+
+    @Value("${ocr.batch.timeout:10m}")
+    private Duration batchTimeout;
+
+    @Value("${app.batch-executor.threads:8}")
+    private int batchThreads;
 
     @Autowired
-    public OcrController(OcrService ocrService, ReportService reportService) {
+    public OcrController(OcrService ocrService, ReportService reportService, UploadSpooler spooler,
+                         ExecutorService batchExecutor) {
         this.ocrService = ocrService;
         this.reportService = reportService;
+        this.spooler = spooler;
+        this.batchExecutor = batchExecutor;
     }
 
     /**
@@ -34,13 +74,20 @@ public class OcrController {
     @PostMapping("/extract")
     public ResponseEntity<?> extract(@RequestParam("file") MultipartFile file) {
         try {
+            // AI is down: fail before paying for OCR whose result we could not use
+            if (!reportService.isAiAvailable()) {
+                return LlmErrorHandler.unavailable("AI temporarily unavailable, please retry shortly", 0);
+            }
+
             // 1) Extract text from file
-            String extracted = ocrService.extractText(file);
+            OcrDocument document = ocrService.extractDocument(file);
 
             // 2) Process + classify + optionally call AI
-            Map<String, Object> result = reportService.processAndInterpret(file.getOriginalFilename(), extracted);
+            Map<String, Object> result = reportService.processAndInterpret(file.getOriginalFilename(), document);
 
             return ResponseEntity.ok(result);
+        } catch (LlmUnavailableException lue) {
+            return LlmErrorHandler.unavailable(lue.getMessage(), lue.getRetryAfterMs());
         } catch (IllegalStateException ise) {
             // e.g., missing AWS / Textract not configured or other preconditions
             return ResponseEntity.status(500).body(Map.of("error", ise.getMessage()));
@@ -49,4 +96,99 @@ public class OcrController {
             return ResponseEntity.status(500).body(Map.of("error", ex.getMessage()));
         }
     }
+
+    /**
+     * Batch upload: many files in one request ("files" parts), processed
+     * concurrently on the bounded batchExecutor. Streams NDJSON, one line per file
+     * in the order files finish: the /extract result plus "index" (position in the
+     * request), or {index, fileName, error} for a file that failed.
+     * The response has its own timeout, ocr.batch.file-timeout per round of
+     * batchExecutor threads capped at ocr.batch.timeout, instead of
+     * spring.mvc.async.request-timeout. On timeout or disconnect, files that have
+     * not started are skipped (no OCR, no AI calls) and a running file stops
+     * before its report. Requires authentication (SecurityConfig).
+     */
+    @PostMapping(path = "/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> batch(@RequestParam("files") List<MultipartFile> files) {
+        if (files.size() > batchMaxFiles) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "At most " + batchMaxFiles + " files per batch");
+        }
+        if (!reportService.isAiAvailable()) {
+            throw new LlmUnavailableException("AI temporarily unavailable, please retry shortly", 0);
+        }
+
+        // set when nobody reads the response any more; queued and running files check it
+        AtomicBoolean abandoned = new AtomicBoolean();
+
+        // every part is spooled now, while the request still owns the multipart files
+        List<Mono<Map<String, Object>>> results = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            int index = i;
+            String fileName = file.getOriginalFilename();
+            try {
+                if (file.isEmpty()) throw new IllegalArgumentException("Empty file");
+                UploadSpooler.SpooledFile upload = spooler.spool(file);
+                // suppressCancel: a cancelled future would never run, and never delete its spool file
+                results.add(Mono.fromFuture(CompletableFuture.supplyAsync(
+                        () -> processBatchFile(index, fileName, upload, abandoned), batchExecutor), true));
+            } catch (Exception ex) {
+                results.add(Mono.just(batchError(index, fileName, ex)));
+            }
+        }
+        long rounds = (files.size() + batchThreads - 1) / Math.max(1, batchThreads);
+        long timeoutMs = Math.min(batchTimeout.toMillis(), Math.max(1, rounds) * batchFileTimeout.toMillis());
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMs);
+        Disposable lines = Flux.merge(results).subscribe(
+                line -> sendLine(emitter, line),
+                emitter::completeWithError,
+                emitter::complete);
+        // client gone or timed out: stop writing and stop the work nobody will read
+        Runnable abandon = () -> {
+            abandoned.set(true);
+            lines.dispose();
+        };
+        emitter.onTimeout(abandon);
+        emitter.onError(error -> abandon.run());
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    private static void sendLine(ResponseBodyEmitter emitter, Map<String, Object> line) {
+        try {
+            emitter.send(line, MediaType.APPLICATION_JSON);
+            emitter.send("\n", MediaType.TEXT_PLAIN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // runs on batchExecutor: OCR, then the same report as /extract; skipped once the batch is abandoned
+    private Map<String, Object> processBatchFile(int index, String fileName, UploadSpooler.SpooledFile upload,
+                                                 AtomicBoolean abandoned) {
+        try {
+            if (abandoned.get()) {
+                upload.close();
+                return batchError(index, fileName, new CancellationException("Batch cancelled"));
+            }
+            OcrDocument document = ocrService.extractDocumentAsync(upload).join();
+            if (abandoned.get()) return batchError(index, fileName, new CancellationException("Batch cancelled"));
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("index", index);
+            line.putAll(reportService.processAndInterpret(fileName, document));
+            return line;
+        } catch (CompletionException ce) {
+            return batchError(index, fileName, ce.getCause());
+        } catch (Exception ex) {
+            return batchError(index, fileName, ex);
+        }
+    }
+
+    private static Map<String, Object> batchError(int index, String fileName, Throwable error) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", index);
+        line.put("fileName", fileName == null ? "unknown" : fileName);
+        line.put("error", error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage());
+        return line;
+    }
 }
@@ -1,5 +1,7 @@
 package com.aidoctor.controller;
 
+import com.aidoctor.model.OcrDocument;
+import com.aidoctor.service.LlmUnavailableException;
 import com.aidoctor.service.OcrService;
 import com.aidoctor.service.ReportService;
 import org.springframework.http.ResponseEntity;
@@ -28,16 +30,23 @@ public class UploadController {
                 return ResponseEntity.badRequest().body(Map.of("error", "No file provided"));
             }
 
+            // AI is down: fail before paying for OCR whose result we could not use
+            if (!reportService.isAiAvailable()) {
+                return LlmErrorHandler.unavailable("AI temporarily unavailable, please retry shortly", 0);
+            }
+
             // Step 1 → Extract OCR text
-            String extractedText = ocrService.extractText(file);
+            OcrDocument document = ocrService.extractDocument(file);
 
             // Step 2 → Run medical classification + AI summary
             Map<String, Object> result =
-                    reportService.processAndInterpret(file.getOriginalFilename(), extractedText);
+                    reportService.processAndInterpret(file.getOriginalFilename(), document);
 
             // Step 3 → return JSON
             return ResponseEntity.ok(result);
 
+        } catch (LlmUnavailableException e) {
+            return LlmErrorHandler.unavailable(e.getMessage(), e.getRetryAfterMs());
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500)
@@ -0,0 +1,121 @@
+package com.aidoctor.fake;
+
+import com.aidoctor.model.LlmMessage;
+import com.aidoctor.model.LlmRequest;
+import com.aidoctor.model.LlmResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * In-process stand-in for POST /v1/chat/completions (profile "fake").
+ * Point openai.base-url at http://localhost:PORT/fake/openai.
+ *
+ * fake.openai.mode=canned returns fake.openai.canned-reply, echo returns the
+ * last user message. Latency and errors come from fake.openai.latency.* and
+ * fake.openai.error-*. stream=true requests get an SSE body with one chunk
+ * per word (delivered after the sampled latency).
+ */
+@Profile("fake")
+@RestController
+@RequestMapping("/fake/openai/v1")
+public class FakeOpenAiController {
+
+    private static final String DEFAULT_CANNED_REPLY =
+            "{\"summary\":\"Stand-in reply from the fake OpenAI endpoint.\",\"docType\":\"Lab Report\"," +
+            "\"patientName\":null,\"tests\":{\"Hemoglobin\":\"13.5 g/dL\"},\"notes\":\"fake\"}";
+
+    private final ObjectMapper objectMapper;
+    private final FaultProfile faults;
+
+    @Value("${fake.openai.mode:canned}")
+    private String mode;
+
+    @Value("${fake.openai.canned-reply:}")
+    private String cannedReply;
+
+    @Value("${fake.openai.error-status:429}")
+    private int errorStatus;
+
+    public FakeOpenAiController(ObjectMapper objectMapper,
+                                @Value("${fake.openai.latency.median-ms:800}") long medianMs,
+                                @Value("${fake.openai.latency.sigma:0.5}") double sigma,
+                                @Value("${fake.openai.error-rate:0}") double errorRate) {
+        this.objectMapper = objectMapper;
+        this.faults = new FaultProfile(medianMs, sigma, errorRate);
+    }
+
+    @PostMapping("/chat/completions")
+    public CompletableFuture<ResponseEntity<String>> complete(@RequestBody LlmRequest request) {
+        boolean fail = faults.injectError();
+        return CompletableFuture.supplyAsync(() -> fail ? error() : reply(request), faults.delayed());
+    }
+
+    private ResponseEntity<String> error() {
+        return ResponseEntity.status(errorStatus)
+                .header("Retry-After", "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"error\":{\"message\":\"injected fault\",\"type\":\"fake\"}}");
+    }
+
+    private ResponseEntity<String> reply(LlmRequest request) {
+        String content = "echo".equalsIgnoreCase(mode) ? lastUserMessage(request)
+                : cannedReply.isBlank() ? DEFAULT_CANNED_REPLY : cannedReply;
+        try {
+            if (Boolean.TRUE.equals(request.getStream())) {
+                return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(sseBody(content));
+            }
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                    .body(objectMapper.writeValueAsString(completion(request, content)));
+        } catch (JsonProcessingException e) {
+            return ResponseEntity.internalServerError().body(e.getMessage());
+        }
+    }
+
+    private LlmResponse completion(LlmRequest request, String content) {
+        LlmResponse.Choice choice = new LlmResponse.Choice();
+        choice.setMessage(LlmMessage.assistant(content));
+        choice.setFinishReason("stop");
+
+        int promptChars = 0;
+        for (LlmMessage m : request.getMessages()) promptChars += m.getContent() == null ? 0 : m.getContent().length();
+        LlmResponse.Usage usage = new LlmResponse.Usage();
+        usage.setPromptTokens(promptChars / 4);
+        usage.setCompletionTokens(content.length() / 4);
+        usage.setTotalTokens(usage.getPromptTokens() + usage.getCompletionTokens());
+
+        LlmResponse response = new LlmResponse();
+        response.setId("fake-" + UUID.randomUUID());
+        response.setModel(request.getModel());
+        response.setChoices(List.of(choice));
+        response.setUsage(usage);
+        return response;
+    }
+
+    private String sseBody(String content) throws JsonProcessingException {
+        StringBuilder sb = new StringBuilder();
+        for (String word : content.split("(?<= )")) {
+            Map<String, Object> chunk = Map.of("choices", List.of(Map.of("index", 0, "delta", Map.of("content", word))));
+            sb.append("data: ").append(objectMapper.writeValueAsString(chunk)).append("\n\n");
+        }
+        sb.append("data: [DONE]\n\n");
+        return sb.toString();
+    }
+
+    private static String lastUserMessage(LlmRequest request) {
+        List<LlmMessage> messages = request.getMessages();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if ("user".equals(messages.get(i).getRole())) return messages.get(i).getContent();
+        }
+        return "";
+    }
+}
@@ -0,0 +1,59 @@
+package com.aidoctor.fake;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in for the S3 objects the async Textract path stages (profile "fake").
+ * Path-style only: point aws.s3.endpoint at http://localhost:PORT/fake-s3.
+ * Supports PutObject, GetObject and DeleteObject; FakeTextractController reads
+ * the documents of StartDocumentTextDetection jobs from here.
+ */
+@Profile("fake")
+@RestController
+@RequestMapping("/fake-s3")
+public class FakeS3Controller {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    @PutMapping("/{bucket}/{*key}")
+    public ResponseEntity<Void> put(@PathVariable String bucket, @PathVariable String key, @RequestBody byte[] body) {
+        objects.put(bucket + key, body);
+        // the SDK checks the ETag against the MD5 of what it sent
+        return ResponseEntity.ok().eTag("\"" + md5Hex(body) + "\"").build();
+    }
+
+    @GetMapping("/{bucket}/{*key}")
+    public ResponseEntity<byte[]> get(@PathVariable String bucket, @PathVariable String key) {
+        byte[] body = objects.get(bucket + key);
+        if (body == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(body);
+    }
+
+    @DeleteMapping("/{bucket}/{*key}")
+    public ResponseEntity<Void> delete(@PathVariable String bucket, @PathVariable String key) {
+        objects.remove(bucket + key);
+        return ResponseEntity.noContent().build();
+    }
+
+    /** Stored object, or null; key as given to the SDK (no leading slash). */
+    byte[] object(String bucket, String key) {
+        return objects.get(bucket + "/" + key);
+    }
+
+    private static String md5Hex(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.aidoctor.fake;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * In-process stand-in for the Textract JSON API (profile "fake").
+ * Point aws.textract.endpoint at http://localhost:PORT/fake/textract.
+ *
+ * Supports DetectDocumentText and AnalyzeDocument, and their async Start / Get
+ * pairs, which read the document from FakeS3Controller. Analysis turns runs of
+ * tab-separated lines into a TABLE and "Key: Value" lines into KEY_VALUE_SET pairs.
+ * fake.textract.mode=canned returns fake.textract.canned-text (once per PDF page),
+ * echo returns the document's own lines when it is plain text or a PDF with a
+ * text layer. Latency (per DetectDocumentText call, per async job) and errors come
+ * from fake.textract.latency.* and fake.textract.error-rate (injected as
+ * ThrottlingException, which the SDK retries).
+ */
+@Profile("fake")
+@RestController
+@RequestMapping("/fake/textract")
+public class FakeTextractController {
+
+    private static final MediaType AMZ_JSON = MediaType.parseMediaType("application/x-amz-json-1.1");
+
+    private static final String DEFAULT_CANNED_TEXT = String.join("\n",
+            "CITY DIAGNOSTIC LABORATORY",
+            "Patient Name: Test Patient",
+            "Complete Blood Count (CBC)",
+            "Test\tResult\tUnit\tReference Range",
+            "Hemoglobin\t13.5\tg/dL\t13.0 - 17.0",
+            "WBC\t7200\t/cumm\t4000 - 11000",
+            "Platelet Count\t2.5\tlakh/cumm\t1.5 - 4.1",
+            "Fasting Blood Sugar\t96\tmg/dL\t70 - 110");
+
+    private static final int MAX_RESULTS = 1000;
+
+    /** Async job: its pages become visible once readyAt has passed. */
+    private record Job(List<List<String>> pages, boolean analyze, long readyAt) {}
+
+    private final ObjectMapper objectMapper;
+    private final FaultProfile faults;
+    private final FakeS3Controller s3;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Value("${fake.textract.mode:canned}")
+    private String mode;
+
+    @Value("${fake.textract.canned-text:}")
+    private String cannedText;
+
+    public FakeTextractController(ObjectMapper objectMapper, FakeS3Controller s3,
+                                  @Value("${fake.textract.latency.median-ms:1500}") long medianMs,
+                                  @Value("${fake.textract.latency.sigma:0.4}") double sigma,
+                                  @Value("${fake.textract.error-rate:0}") double errorRate) {
+        this.objectMapper = objectMapper;
+        this.s3 = s3;
+        this.faults = new FaultProfile(medianMs, sigma, errorRate);
+    }
+
+    // the SDK posts to the endpoint root, with or without a trailing slash
+    @PostMapping(path = {"", "/"})
+    public CompletableFuture<ResponseEntity<String>> invoke(@RequestHeader("X-Amz-Target") String target,
+                                                            @RequestBody String body) {
+        boolean fail = faults.injectError();
+        // async jobs spend their latency in the job, not in the start/get calls
+        boolean sync = target.endsWith(".DetectDocumentText") || target.endsWith(".AnalyzeDocument");
+        Executor executor = sync ? faults.delayed() : Runnable::run;
+        return CompletableFuture.supplyAsync(() -> {
+            if (fail) return awsError(400, "ThrottlingException", "injected fault");
+            try {
+                JsonNode request = objectMapper.readTree(body);
+                if (target.endsWith(".DetectDocumentText")) {
+                    return detectDocumentText(request, false);
+                }
+                if (target.endsWith(".AnalyzeDocument")) {
+                    return detectDocumentText(request, true);
+                }
+                if (target.endsWith(".StartDocumentTextDetection")) {
+                    return startDocumentTextDetection(request, false);
+                }
+                if (target.endsWith(".StartDocumentAnalysis")) {
+                    return startDocumentTextDetection(request, true);
+                }
+                if (target.endsWith(".GetDocumentTextDetection") || target.endsWith(".GetDocumentAnalysis")) {
+                    return getDocumentTextDetection(request);
+                }
+                return awsError(400, "UnsupportedOperationException", "fake Textract does not implement " + target);
+            } catch (Exception e) {
+                return awsError(400, "InvalidParameterException", e.getMessage());
+            }
+        }, executor);
+    }
+
+    private ResponseEntity<String> detectDocumentText(JsonNode request, boolean analyze) {
+        String base64 = request.path("Document").path("Bytes").asText("");
+        List<List<String>> pages = documentPages(base64.isEmpty() ? new byte[0] : Base64.getDecoder().decode(base64));
+        // like Textract, the synchronous API only takes single-page documents
+        if (pages.size() > 1) {
+            return awsError(400, "UnsupportedDocumentException", "Request has unsupported document format");
+        }
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putObject("DocumentMetadata").put("Pages", 1);
+        response.put("DetectDocumentTextModelVersion", "fake-1.0");
+        response.set("Blocks", pageBlocks(pages.get(0), 1, analyze));
+        return ok(response);
+    }
+
+    private ResponseEntity<String> startDocumentTextDetection(JsonNode request, boolean analyze) {
+        JsonNode location = request.path("DocumentLocation").path("S3Object");
+        byte[] document = s3.object(location.path("Bucket").asText(), location.path("Name").asText());
+        if (document == null) {
+            return awsError(400, "InvalidS3ObjectException", "Unable to get object metadata from S3");
+        }
+
+        String jobId = UUID.randomUUID().toString();
+        jobs.put(jobId, new Job(documentPages(document), analyze, System.currentTimeMillis() + faults.sampleDelayMs()));
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("JobId", jobId);
+        return ok(response);
+    }
+
+    // one page of results (MaxResults blocks); NextToken is the offset of the next block
+    private ResponseEntity<String> getDocumentTextDetection(JsonNode request) {
+        String jobId = request.path("JobId").asText();
+        Job job = jobs.get(jobId);
+        if (job == null) return awsError(400, "InvalidJobIdException", "Unknown JobId " + jobId);
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("DetectDocumentTextModelVersion", "fake-1.0");
+        if (System.currentTimeMillis() < job.readyAt()) {
+            response.put("JobStatus", "IN_PROGRESS");
+            return ok(response);
+        }
+
+        ArrayNode blocks = objectMapper.createArrayNode();
+        for (int page = 0; page < job.pages().size(); page++) {
+            blocks.addAll(pageBlocks(job.pages().get(page), page + 1, job.analyze()));
+        }
+        int maxResults = request.path("MaxResults").asInt(MAX_RESULTS);
+        int from = request.path("NextToken").asInt(0);
+        int to = Math.min(blocks.size(), from + Math.max(1, maxResults));
+
+        response.put("JobStatus", "SUCCEEDED");
+        response.putObject("DocumentMetadata").put("Pages", job.pages().size());
+        ArrayNode slice = response.putArray("Blocks");
+        for (int i = from; i < to; i++) slice.add(blocks.get(i));
+        if (to < blocks.size()) {
+            response.put("NextToken", String.valueOf(to));
+        } else {
+            jobs.remove(jobId); // fully read; keeps a long load test from piling up jobs
+        }
+        return ok(response);
+    }
+
+    // PAGE block followed by one LINE block per line, stacked top to bottom; analysis adds tables and fields
+    private ArrayNode pageBlocks(List<String> lines, int page, boolean analyze) {
+        ArrayNode blocks = objectMapper.createArrayNode();
+        ObjectNode pageBlock = blocks.addObject();
+        pageBlock.put("BlockType", "PAGE");
+        pageBlock.put("Id", UUID.randomUUID().toString());
+        pageBlock.put("Page", page);
+        geometry(pageBlock, 0, 0, 1, 1);
+
+        float height = 1f / Math.max(lines.size(), 1);
+        for (int i = 0; i < lines.size(); i++) {
+            ObjectNode line = block(blocks, "LINE", page);
+            line.put("Text", lines.get(i).replace('\t', ' '));
+            geometry(line, 0.05f, i * height, 0.9f, height);
+        }
+        if (!analyze) return blocks;
+
+        List<String[]> rows = new ArrayList<>();
+        for (String line : lines) {
+            if (line.indexOf('\t') >= 0) {
+                rows.add(line.split("\t"));
+                continue;
+            }
+            if (!rows.isEmpty()) table(blocks, rows, page);
+            rows.clear();
+            int colon = line.indexOf(": ");
+            if (colon > 0) field(blocks, line.substring(0, colon + 1), line.substring(colon + 2).strip(), page);
+        }
+        if (!rows.isEmpty()) table(blocks, rows, page);
+        return blocks;
+    }
+
+    private void table(ArrayNode blocks, List<String[]> rows, int page) {
+        ArrayNode cells = block(blocks, "TABLE", page).putArray("Relationships").addObject()
+                .put("Type", "CHILD").putArray("Ids");
+        for (int r = 0; r < rows.size(); r++) {
+            for (int c = 0; c < rows.get(r).length; c++) {
+                ObjectNode cell = block(blocks, "CELL", page);
+                cell.put("RowIndex", r + 1).put("ColumnIndex", c + 1).put("RowSpan", 1).put("ColumnSpan", 1);
+                words(blocks, cell, rows.get(r)[c], page);
+                cells.add(cell.get("Id").asText());
+            }
+        }
+    }
+
+    private void field(ArrayNode blocks, String key, String value, int page) {
+        ObjectNode keyBlock = block(blocks, "KEY_VALUE_SET", page);
+        keyBlock.putArray("EntityTypes").add("KEY");
+        ObjectNode valueBlock = block(blocks, "KEY_VALUE_SET", page);
+        valueBlock.putArray("EntityTypes").add("VALUE");
+        ArrayNode keyLinks = words(blocks, keyBlock, key, page);
+        keyLinks.addObject().put("Type", "VALUE").putArray("Ids").add(valueBlock.get("Id").asText());
+        words(blocks, valueBlock, value, page);
+    }
+
+    // WORD blocks for text, linked as CHILD of parent; returns the parent's Relationships
+    private ArrayNode words(ArrayNode blocks, ObjectNode parent, String text, int page) {
+        ArrayNode relationships = parent.putArray("Relationships");
+        ArrayNode ids = relationships.addObject().put("Type", "CHILD").putArray("Ids");
+        for (String word : text.strip().split("\\s+")) {
+            if (word.isEmpty()) continue;
+            ObjectNode wordBlock = block(blocks, "WORD", page);
+            wordBlock.put("Text", word);
+            ids.add(wordBlock.get("Id").asText());
+        }
+        return relationships;
+    }
+
+    private static ObjectNode block(ArrayNode blocks, String type, int page) {
+        ObjectNode block = blocks.addObject();
+        block.put("BlockType", type);
+        block.put("Id", UUID.randomUUID().toString());
+        block.put("Confidence", 99.0);
+        block.put("Page", page);
+        return block;
+    }
+
+    private static void geometry(ObjectNode block, float left, float top, float width, float height) {
+        ObjectNode box = block.putObject("Geometry").putObject("BoundingBox");
+        box.put("Left", left);
+        box.put("Top", top);
+        box.put("Width", width);
+        box.put("Height", height);
+    }
+
+    // lines of each page; only PDFs have more than one
+    private List<List<String>> documentPages(byte[] bytes) {
+        boolean pdf = bytes.length > 4 && new String(bytes, 0, 5, StandardCharsets.US_ASCII).equals("%PDF-");
+        if (!pdf) return List.of(documentLines(bytes));
+
+        try (PDDocument document = PDDocument.load(bytes)) {
+            List<List<String>> pages = new ArrayList<>();
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int page = 1; page <= document.getNumberOfPages(); page++) {
+                if (!"echo".equalsIgnoreCase(mode)) {
+                    pages.add(cannedLines());
+                    continue;
+                }
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                pages.add(splitLines(stripper.getText(document)));
+            }
+            return pages.isEmpty() ? List.of(List.of()) : pages;
+        } catch (IOException e) {
+            return List.of(List.of("(unreadable PDF of " + bytes.length + " bytes)"));
+        }
+    }
+
+    private List<String> documentLines(byte[] bytes) {
+        if (!"echo".equalsIgnoreCase(mode)) return cannedLines();
+
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        long printable = text.chars().filter(c -> c == '\n' || c == '\t' || (c >= 32 && c != 0xFFFD)).count();
+        if (text.isEmpty() || printable < text.length() * 0.95) {
+            return List.of("(binary document of " + bytes.length + " bytes)");
+        }
+
+        return splitLines(text);
+    }
+
+    private List<String> cannedLines() {
+        return List.of((cannedText.isBlank() ? DEFAULT_CANNED_TEXT : cannedText).split("\n"));
+    }
+
+    private static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\r?\n")) {
+            if (!line.isBlank()) lines.add(line.strip());
+        }
+        return lines;
+    }
+
+    private ResponseEntity<String> ok(JsonNode body) {
+        return ResponseEntity.ok().contentType(AMZ_JSON).body(body.toString());
+    }
+
+    private ResponseEntity<String> awsError(int status, String type, String message) {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.put("__type", type);
+        error.put("message", message);
+        return ResponseEntity.status(status)
+                .contentType(AMZ_JSON)
+                .header("x-amzn-ErrorType", type)
+                .body(error.toString());
+    }
+}
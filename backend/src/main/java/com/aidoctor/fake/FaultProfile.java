@@ -0,0 +1,39 @@
+package com.aidoctor.fake;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and error injection for the fake backends.
+ * Latency is log-normal around medianMs (sigma 0 = fixed delay), which gives
+ * the long right tail real providers have. errorRate is a probability 0..1.
+ */
+class FaultProfile {
+
+    private final long medianMs;
+    private final double sigma;
+    private final double errorRate;
+
+    FaultProfile(long medianMs, double sigma, double errorRate) {
+        this.medianMs = medianMs;
+        this.sigma = sigma;
+        this.errorRate = errorRate;
+    }
+
+    long sampleDelayMs() {
+        if (medianMs <= 0) return 0;
+        double g = ThreadLocalRandom.current().nextGaussian();
+        return Math.round(medianMs * Math.exp(sigma * g));
+    }
+
+    boolean injectError() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    /** Executor that runs the response after the sampled delay, without holding a request thread meanwhile. */
+    Executor delayed() {
+        return CompletableFuture.delayedExecutor(sampleDelayMs(), TimeUnit.MILLISECONDS);
+    }
+}
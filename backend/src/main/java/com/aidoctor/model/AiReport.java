@@ -0,0 +1,36 @@
+package com.aidoctor.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed form of the JSON the report prompt asks for:
+ * { summary, docType, patientName, tests, notes }, plus the
+ * analyzeReport prompt's interpretation (text, or the object as JSON).
+ */
+public class AiReport {
+    private String summary;
+    private String docType;
+    private String patientName;
+    private List<TestResult> tests = new ArrayList<>();
+    private String notes;
+    private String interpretation;
+
+    public String getSummary() { return summary; }
+    public void setSummary(String summary) { this.summary = summary; }
+
+    public String getDocType() { return docType; }
+    public void setDocType(String docType) { this.docType = docType; }
+
+    public String getPatientName() { return patientName; }
+    public void setPatientName(String patientName) { this.patientName = patientName; }
+
+    public List<TestResult> getTests() { return tests; }
+    public void setTests(List<TestResult> tests) { this.tests = tests; }
+
+    public String getNotes() { return notes; }
+    public void setNotes(String notes) { this.notes = notes; }
+
+    public String getInterpretation() { return interpretation; }
+    public void setInterpretation(String interpretation) { this.interpretation = interpretation; }
+}
@@ -3,6 +3,8 @@ package com.aidoctor.model;
 public class ChatRequest {
     private String userId;
     private String text;
+    // issued by the server in the previous ChatResponse; null starts a new conversation
+    private String conversationId;
 
     public ChatRequest() {}
 
@@ -16,4 +18,7 @@ public class ChatRequest {
 
     public String getText() { return text; }
     public void setText(String text) { this.text = text; }
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
 }
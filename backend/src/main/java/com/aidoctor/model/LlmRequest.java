@@ -0,0 +1,75 @@
+package com.aidoctor.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed body for POST /v1/chat/completions.
+ * Null fields are left out so the provider defaults apply.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LlmRequest {
+    private String model;
+    private List<LlmMessage> messages = new ArrayList<>();
+
+    @JsonProperty("max_tokens")
+    private Integer maxTokens;
+
+    private Double temperature;
+
+    private Boolean stream;
+
+    @JsonProperty("stream_options")
+    private StreamOptions streamOptions;
+
+    public LlmRequest() {}
+
+    public LlmRequest(String model, List<LlmMessage> messages, Integer maxTokens) {
+        this.model = model;
+        this.messages = messages;
+        this.maxTokens = maxTokens;
+    }
+
+    /** Common shape: one system prompt followed by one user prompt. */
+    public static LlmRequest of(String model, String systemPrompt, String userPrompt, Integer maxTokens) {
+        List<LlmMessage> messages = new ArrayList<>(2);
+        if (systemPrompt != null) messages.add(LlmMessage.system(systemPrompt));
+        messages.add(LlmMessage.user(userPrompt));
+        return new LlmRequest(model, messages, maxTokens);
+    }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public List<LlmMessage> getMessages() { return messages; }
+    public void setMessages(List<LlmMessage> messages) { this.messages = messages; }
+
+    public Integer getMaxTokens() { return maxTokens; }
+    public void setMaxTokens(Integer maxTokens) { this.maxTokens = maxTokens; }
+
+    public Double getTemperature() { return temperature; }
+    public void setTemperature(Double temperature) { this.temperature = temperature; }
+
+    public Boolean getStream() { return stream; }
+    public void setStream(Boolean stream) { this.stream = stream; }
+
+    public StreamOptions getStreamOptions() { return streamOptions; }
+    public void setStreamOptions(StreamOptions streamOptions) { this.streamOptions = streamOptions; }
+
+    /** stream_options: include_usage asks for a final event with token counts. */
+    public static class StreamOptions {
+        public static final StreamOptions INCLUDE_USAGE = new StreamOptions(true);
+
+        @JsonProperty("include_usage")
+        private boolean includeUsage;
+
+        public StreamOptions() {}
+        public StreamOptions(boolean includeUsage) { this.includeUsage = includeUsage; }
+
+        public boolean isIncludeUsage() { return includeUsage; }
+        public void setIncludeUsage(boolean includeUsage) { this.includeUsage = includeUsage; }
+    }
+}
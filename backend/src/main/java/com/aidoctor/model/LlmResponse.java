@@ -0,0 +1,103 @@
+package com.aidoctor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Typed response of /v1/chat/completions (only the fields we use).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LlmResponse {
+    private String id;
+    private String model;
+    private List<Choice> choices;
+    private Usage usage;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public List<Choice> getChoices() { return choices; }
+    public void setChoices(List<Choice> choices) { this.choices = choices; }
+
+    public Usage getUsage() { return usage; }
+    public void setUsage(Usage usage) { this.usage = usage; }
+
+    /** Content of the first choice, or null when the provider sent none. */
+    @JsonIgnore
+    public String getContent() {
+        if (choices == null || choices.isEmpty()) return null;
+        Choice first = choices.get(0);
+        if (first.getMessage() != null) return first.getMessage().getContent();
+        return first.getText();
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Choice {
+        private int index;
+        private LlmMessage message;
+        private String text;
+
+        @JsonProperty("finish_reason")
+        private String finishReason;
+
+        public int getIndex() { return index; }
+        public void setIndex(int index) { this.index = index; }
+
+        public LlmMessage getMessage() { return message; }
+        public void setMessage(LlmMessage message) { this.message = message; }
+
+        public String getText() { return text; }
+        public void setText(String text) { this.text = text; }
+
+        public String getFinishReason() { return finishReason; }
+        public void setFinishReason(String finishReason) { this.finishReason = finishReason; }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Usage {
+        @JsonProperty("prompt_tokens")
+        private int promptTokens;
+
+        @JsonProperty("completion_tokens")
+        private int completionTokens;
+
+        @JsonProperty("total_tokens")
+        private int totalTokens;
+
+        @JsonProperty("prompt_tokens_details")
+        private PromptTokensDetails promptTokensDetails;
+
+        public int getPromptTokens() { return promptTokens; }
+        public void setPromptTokens(int promptTokens) { this.promptTokens = promptTokens; }
+
+        public int getCompletionTokens() { return completionTokens; }
+        public void setCompletionTokens(int completionTokens) { this.completionTokens = completionTokens; }
+
+        public int getTotalTokens() { return totalTokens; }
+        public void setTotalTokens(int totalTokens) { this.totalTokens = totalTokens; }
+
+        public PromptTokensDetails getPromptTokensDetails() { return promptTokensDetails; }
+        public void setPromptTokensDetails(PromptTokensDetails promptTokensDetails) { this.promptTokensDetails = promptTokensDetails; }
+
+        /** Prompt tokens served from the provider's prompt cache (billed at a discount). */
+        @JsonIgnore
+        public int getCachedTokens() {
+            return promptTokensDetails == null ? 0 : promptTokensDetails.getCachedTokens();
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class PromptTokensDetails {
+        @JsonProperty("cached_tokens")
+        private int cachedTokens;
+
+        public int getCachedTokens() { return cachedTokens; }
+        public void setCachedTokens(int cachedTokens) { this.cachedTokens = cachedTokens; }
+    }
+}
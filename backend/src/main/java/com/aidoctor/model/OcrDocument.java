@@ -0,0 +1,382 @@
+package com.aidoctor.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * OCR result with its layout: pages, lines, words, bounding boxes, confidence, tables
+ * and form fields (key/value pairs).
+ *
+ * Stored column-wise in primitive arrays, not as one object per word, so a
+ * 20-page report is a handful of arrays. Text is kept in four buffers (lines,
+ * words, table cells, form fields) addressed by start/end offsets. Boxes are
+ * (left, top, width, height) as fractions of the page, NaN when unknown (text
+ * read from a PDF text layer has no geometry). Confidence is 0..100.
+ *
+ * {@link #text()} is the plain text: lines joined by newlines, pages separated
+ * by a form feed line. Serializes to a compact binary form for the OCR cache.
+ */
+public final class OcrDocument {
+
+    private static final int MAGIC = 0x4F435232; // "OCR2"
+
+    private final String text;          // line text buffer == text()
+    private final int[] pageFirstLine;  // pageCount + 1 entries
+    private final int[] lineStart, lineEnd, lineFirstWord; // lineFirstWord has lineCount + 1 entries
+    private final float[] lineBox, lineConfidence;
+    private final String wordText;
+    private final int[] wordStart, wordEnd;
+    private final float[] wordBox, wordConfidence;
+    private final String cellText;
+    private final int[] tablePage, tableRows, tableColumns, tableFirstCell; // cells are row-major
+    private final int[] cellStart, cellEnd;
+    private final float[] cellConfidence;
+    private final String fieldText;
+    private final int[] fieldPage, fieldKeyStart, fieldKeyEnd, fieldValueStart, fieldValueEnd;
+    private final float[] fieldConfidence;
+
+    private OcrDocument(String text, int[] pageFirstLine, int[] lineStart, int[] lineEnd, int[] lineFirstWord,
+                        float[] lineBox, float[] lineConfidence, String wordText, int[] wordStart, int[] wordEnd,
+                        float[] wordBox, float[] wordConfidence, String cellText, int[] tablePage, int[] tableRows,
+                        int[] tableColumns, int[] tableFirstCell, int[] cellStart, int[] cellEnd,
+                        float[] cellConfidence, String fieldText, int[] fieldPage, int[] fieldKeyStart,
+                        int[] fieldKeyEnd, int[] fieldValueStart, int[] fieldValueEnd, float[] fieldConfidence) {
+        this.text = text;
+        this.pageFirstLine = pageFirstLine;
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+        this.lineFirstWord = lineFirstWord;
+        this.lineBox = lineBox;
+        this.lineConfidence = lineConfidence;
+        this.wordText = wordText;
+        this.wordStart = wordStart;
+        this.wordEnd = wordEnd;
+        this.wordBox = wordBox;
+        this.wordConfidence = wordConfidence;
+        this.cellText = cellText;
+        this.tablePage = tablePage;
+        this.tableRows = tableRows;
+        this.tableColumns = tableColumns;
+        this.tableFirstCell = tableFirstCell;
+        this.cellStart = cellStart;
+        this.cellEnd = cellEnd;
+        this.cellConfidence = cellConfidence;
+        this.fieldText = fieldText;
+        this.fieldPage = fieldPage;
+        this.fieldKeyStart = fieldKeyStart;
+        this.fieldKeyEnd = fieldKeyEnd;
+        this.fieldValueStart = fieldValueStart;
+        this.fieldValueEnd = fieldValueEnd;
+        this.fieldConfidence = fieldConfidence;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Plain text: lines joined by newlines, pages separated by a form feed line. */
+    public String text() { return text; }
+
+    public boolean isBlank() { return text.isBlank(); }
+
+    // ---------- pages & lines ----------
+
+    public int pageCount() { return pageFirstLine.length - 1; }
+
+    /** Lines of a page (0-based) are firstLine(page) until firstLine(page + 1). */
+    public int firstLine(int page) { return pageFirstLine[page]; }
+
+    public int lineCount() { return lineStart.length; }
+    public String lineText(int line) { return text.substring(lineStart[line], lineEnd[line]); }
+    public float lineConfidence(int line) { return lineConfidence[line]; }
+    public float lineLeft(int line) { return lineBox[4 * line]; }
+    public float lineTop(int line) { return lineBox[4 * line + 1]; }
+    public float lineWidth(int line) { return lineBox[4 * line + 2]; }
+    public float lineHeight(int line) { return lineBox[4 * line + 3]; }
+
+    /** Words of a line are firstWord(line) until firstWord(line + 1). */
+    public int firstWord(int line) { return lineFirstWord[line]; }
+
+    // ---------- words ----------
+
+    public int wordCount() { return wordStart.length; }
+    public String wordText(int word) { return wordText.substring(wordStart[word], wordEnd[word]); }
+    public float wordConfidence(int word) { return wordConfidence[word]; }
+    public float wordLeft(int word) { return wordBox[4 * word]; }
+    public float wordTop(int word) { return wordBox[4 * word + 1]; }
+    public float wordWidth(int word) { return wordBox[4 * word + 2]; }
+    public float wordHeight(int word) { return wordBox[4 * word + 3]; }
+
+    // ---------- tables ----------
+
+    public int tableCount() { return tablePage.length; }
+    public int tablePage(int table) { return tablePage[table]; }
+    public int tableRows(int table) { return tableRows[table]; }
+    public int tableColumns(int table) { return tableColumns[table]; }
+
+    /** Cell text, "" for an empty or missing cell; row and column are 0-based. */
+    public String cellText(int table, int row, int column) {
+        int cell = cell(table, row, column);
+        return cellText.substring(cellStart[cell], cellEnd[cell]);
+    }
+
+    public float cellConfidence(int table, int row, int column) {
+        return cellConfidence[cell(table, row, column)];
+    }
+
+    private int cell(int table, int row, int column) {
+        if (row < 0 || row >= tableRows[table] || column < 0 || column >= tableColumns[table]) {
+            throw new IndexOutOfBoundsException("cell " + row + "," + column + " of table " + table);
+        }
+        return tableFirstCell[table] + row * tableColumns[table] + column;
+    }
+
+    // ---------- form fields ----------
+
+    public int fieldCount() { return fieldPage.length; }
+    public int fieldPage(int field) { return fieldPage[field]; }
+    public String fieldKey(int field) { return fieldText.substring(fieldKeyStart[field], fieldKeyEnd[field]); }
+    public String fieldValue(int field) { return fieldText.substring(fieldValueStart[field], fieldValueEnd[field]); }
+    public float fieldConfidence(int field) { return fieldConfidence[field]; }
+
+    // ---------- binary form ----------
+
+    /** Rough heap footprint, for cache weighing. */
+    public int sizeBytes() {
+        return 2 * (text.length() + wordText.length() + cellText.length() + fieldText.length())
+                + 4 * (pageFirstLine.length + 4 * lineStart.length + 2 * lineBox.length + 2 * wordStart.length
+                + wordBox.length + wordConfidence.length + 4 * tablePage.length + 3 * cellStart.length
+                + 6 * fieldPage.length);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        writeString(out, text);
+        writeInts(out, pageFirstLine);
+        writeInts(out, lineStart);
+        writeInts(out, lineEnd);
+        writeInts(out, lineFirstWord);
+        writeFloats(out, lineBox);
+        writeFloats(out, lineConfidence);
+        writeString(out, wordText);
+        writeInts(out, wordStart);
+        writeInts(out, wordEnd);
+        writeFloats(out, wordBox);
+        writeFloats(out, wordConfidence);
+        writeString(out, cellText);
+        writeInts(out, tablePage);
+        writeInts(out, tableRows);
+        writeInts(out, tableColumns);
+        writeInts(out, tableFirstCell);
+        writeInts(out, cellStart);
+        writeInts(out, cellEnd);
+        writeFloats(out, cellConfidence);
+        writeString(out, fieldText);
+        writeInts(out, fieldPage);
+        writeInts(out, fieldKeyStart);
+        writeInts(out, fieldKeyEnd);
+        writeInts(out, fieldValueStart);
+        writeInts(out, fieldValueEnd);
+        writeFloats(out, fieldConfidence);
+    }
+
+    /** Reads what writeTo wrote, e.g. straight from a mapped file. */
+    public static OcrDocument readFrom(ByteBuffer in) {
+        if (in.getInt() != MAGIC) throw new IllegalArgumentException("Not a serialized OcrDocument");
+        return new OcrDocument(readString(in), readInts(in), readInts(in), readInts(in), readInts(in),
+                readFloats(in), readFloats(in), readString(in), readInts(in), readInts(in),
+                readFloats(in), readFloats(in), readString(in), readInts(in), readInts(in),
+                readInts(in), readInts(in), readInts(in), readInts(in), readFloats(in),
+                readString(in), readInts(in), readInts(in), readInts(in), readInts(in), readInts(in),
+                readFloats(in));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) out.writeInt(v);
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float v : values) out.writeFloat(v);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    private static float[] readFloats(ByteBuffer in) {
+        float[] values = new float[in.getInt()];
+        in.asFloatBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    /**
+     * Appends pages in order; lines, tables and fields go to the current page,
+     * words to the last line. Tables are sized up front and their cells filled in any order.
+     */
+    public static final class Builder {
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder words = new StringBuilder();
+        private final IntArray pageFirstLine = new IntArray();
+        private final IntArray lineStart = new IntArray(), lineEnd = new IntArray(), lineFirstWord = new IntArray();
+        private final FloatArray lineBox = new FloatArray(), lineConfidence = new FloatArray();
+        private final IntArray wordStart = new IntArray(), wordEnd = new IntArray();
+        private final FloatArray wordBox = new FloatArray(), wordConfidence = new FloatArray();
+        private final IntArray tablePage = new IntArray(), tableRows = new IntArray();
+        private final IntArray tableColumns = new IntArray(), tableFirstCell = new IntArray();
+        private final List<String> cells = new ArrayList<>();
+        private final FloatArray cellConfidence = new FloatArray();
+        private final StringBuilder fields = new StringBuilder();
+        private final IntArray fieldPage = new IntArray(), fieldKeyStart = new IntArray(), fieldKeyEnd = new IntArray();
+        private final IntArray fieldValueStart = new IntArray(), fieldValueEnd = new IntArray();
+        private final FloatArray fieldConfidence = new FloatArray();
+
+        private Builder() {}
+
+        public Builder startPage() {
+            if (pageFirstLine.size > 0) text.append("\f\n");
+            pageFirstLine.add(lineStart.size);
+            return this;
+        }
+
+        public Builder addLine(String line, float confidence, float left, float top, float width, float height) {
+            if (pageFirstLine.size == 0) startPage();
+            if (lineStart.size > pageFirstLine.last()) text.append('\n');
+            lineStart.add(text.length());
+            text.append(line);
+            lineEnd.add(text.length());
+            lineFirstWord.add(wordStart.size);
+            lineBox.add(left, top, width, height);
+            lineConfidence.add(confidence);
+            return this;
+        }
+
+        /** A line without geometry, e.g. from a PDF text layer. */
+        public Builder addLine(String line) {
+            return addLine(line, 100f, Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+        }
+
+        public Builder addWord(String word, float confidence, float left, float top, float width, float height) {
+            if (lineStart.size == 0) throw new IllegalStateException("addWord before addLine");
+            if (words.length() > 0) words.append(' ');
+            wordStart.add(words.length());
+            words.append(word);
+            wordEnd.add(words.length());
+            wordBox.add(left, top, width, height);
+            wordConfidence.add(confidence);
+            return this;
+        }
+
+        public Builder addTable(int rows, int columns) {
+            if (pageFirstLine.size == 0) startPage();
+            tablePage.add(pageFirstLine.size - 1);
+            tableRows.add(rows);
+            tableColumns.add(columns);
+            tableFirstCell.add(cells.size());
+            for (int i = 0; i < rows * columns; i++) {
+                cells.add("");
+                cellConfidence.add(0f);
+            }
+            return this;
+        }
+
+        /** Fills a cell of the last table; row and column are 0-based. */
+        public Builder setCell(int row, int column, String cellText, float confidence) {
+            int table = tablePage.size - 1;
+            if (table < 0) throw new IllegalStateException("setCell before addTable");
+            if (row < 0 || row >= tableRows.get(table) || column < 0 || column >= tableColumns.get(table)) {
+                return this; // spans can point past a table Textract sized smaller; ignore
+            }
+            int cell = tableFirstCell.get(table) + row * tableColumns.get(table) + column;
+            cells.set(cell, cellText);
+            cellConfidence.set(cell, confidence);
+            return this;
+        }
+
+        /** A form field ("Patient Name" -> "J. Doe"); value is "" when the form left it empty. */
+        public Builder addField(String key, String value, float confidence) {
+            if (pageFirstLine.size == 0) startPage();
+            fieldPage.add(pageFirstLine.size - 1);
+            fieldKeyStart.add(fields.length());
+            fields.append(key);
+            fieldKeyEnd.add(fields.length());
+            fieldValueStart.add(fields.length());
+            fields.append(value);
+            fieldValueEnd.add(fields.length());
+            fieldConfidence.add(confidence);
+            return this;
+        }
+
+        public OcrDocument build() {
+            StringBuilder cellText = new StringBuilder();
+            int[] cellStart = new int[cells.size()];
+            int[] cellEnd = new int[cells.size()];
+            for (int i = 0; i < cells.size(); i++) {
+                cellStart[i] = cellText.length();
+                cellText.append(cells.get(i));
+                cellEnd[i] = cellText.length();
+            }
+            int[] pages = Arrays.copyOf(pageFirstLine.toArray(), pageFirstLine.size + 1);
+            pages[pageFirstLine.size] = lineStart.size;
+            int[] firstWord = Arrays.copyOf(lineFirstWord.toArray(), lineFirstWord.size + 1);
+            firstWord[lineFirstWord.size] = wordStart.size;
+
+            return new OcrDocument(text.toString(), pages, lineStart.toArray(), lineEnd.toArray(), firstWord,
+                    lineBox.toArray(), lineConfidence.toArray(), words.toString(), wordStart.toArray(),
+                    wordEnd.toArray(), wordBox.toArray(), wordConfidence.toArray(), cellText.toString(),
+                    tablePage.toArray(), tableRows.toArray(), tableColumns.toArray(), tableFirstCell.toArray(),
+                    cellStart, cellEnd, cellConfidence.toArray(), fields.toString(), fieldPage.toArray(),
+                    fieldKeyStart.toArray(), fieldKeyEnd.toArray(), fieldValueStart.toArray(),
+                    fieldValueEnd.toArray(), fieldConfidence.toArray());
+        }
+    }
+
+    private static final class IntArray {
+        int[] values = new int[16];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int get(int i) { return values[i]; }
+        int last() { return values[size - 1]; }
+        int[] toArray() { return Arrays.copyOf(values, size); }
+    }
+
+    private static final class FloatArray {
+        float[] values = new float[16];
+        int size;
+
+        void add(float... vs) {
+            if (size + vs.length > values.length) values = Arrays.copyOf(values, Math.max(size * 2, size + vs.length));
+            for (float v : vs) values[size++] = v;
+        }
+
+        void set(int i, float v) { values[i] = v; }
+        float[] toArray() { return Arrays.copyOf(values, size); }
+    }
+}
@@ -1,7 +1,10 @@
 package com.aidoctor.security;
 
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.web.SecurityFilterChain;
@@ -16,6 +19,13 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .cors(cors -> cors.configure(http))
                 .authorizeHttpRequests(auth -> auth
+                        // metrics and prometheus expose per-operation LLM/AWS usage: basic auth
+                        // (spring.security.user.*); health stays open for probes
+                        .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                        .requestMatchers(EndpointRequest.toAnyEndpoint()).authenticated()
+                        // a batch is up to spring.servlet.multipart.max-request-size of uploads and
+                        // many OCR/LLM calls; rejected here, before the multipart body is parsed
+                        .requestMatchers(HttpMethod.POST, "/api/ocr/batch").authenticated()
                         .requestMatchers("/**").permitAll()
                         .anyRequest().permitAll()
                 )
@@ -0,0 +1,177 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.AiReport;
+import com.aidoctor.model.TestResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Parses the report prompt's JSON reply straight into an {@link AiReport}
+ * with Jackson's token stream: no tree, no intermediate Map.
+ *
+ * Serves both the report prompt (ReportService) and the analyzeReport prompt
+ * (ReportProcessor), whose "interpretation" may be text or an object.
+ * Text before the first '{' (e.g. a ```json fence) and after the closing '}'
+ * is ignored. Type errors against the schema raise IllegalArgumentException.
+ */
+public final class AiReplyParser {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private AiReplyParser() {}
+
+    /** Parses a reply; throws IllegalArgumentException if it is not a valid report object. */
+    public static AiReport parse(String reply) {
+        int start = reply == null ? -1 : reply.indexOf('{');
+        if (start < 0) throw new IllegalArgumentException("AI reply contains no JSON object");
+        ReportReader reader = new ReportReader();
+        try (JsonParser parser = FACTORY.createParser(reply.substring(start))) {
+            JsonToken token;
+            while (!reader.done && (token = parser.nextToken()) != null) {
+                reader.accept(parser, token);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("AI reply is not valid JSON: " + e.getMessage(), e);
+        }
+        if (!reader.done) throw new IllegalArgumentException("AI reply JSON is truncated");
+        if (!reader.sawSummary) throw new IllegalArgumentException("AI reply has no \"summary\" field");
+        return reader.report;
+    }
+
+    /**
+     * Token-level state machine for
+     * { "summary": s, "docType": s, "patientName": s, "notes": s | [s], "interpretation": s | {..} | [..],
+     *   "tests": { name: value | {value, unit, range...} } | [ {name, value, unit, range...} ] }
+     * Unknown keys are skipped.
+     */
+    private static final class ReportReader {
+
+        final AiReport report = new AiReport();
+        boolean done;
+        boolean sawSummary;
+
+        private int depth;
+        private int skipBase = -1;
+        private String topField;
+        private String testField;
+        private String leafField;
+        private boolean testsIsArray;
+        private TestResult currentTest;
+        private String pendingRange;
+
+        void accept(JsonParser p, JsonToken t) throws IOException {
+            if (skipBase >= 0) {
+                if (t.isStructStart()) depth++;
+                else if (t.isStructEnd() && --depth == skipBase) skipBase = -1;
+                return;
+            }
+
+            if (t.isStructStart()) {
+                openStruct(p, t);
+            } else if (t.isStructEnd()) {
+                closeStruct();
+            } else if (t == JsonToken.FIELD_NAME) {
+                if (depth == 1) topField = p.currentName();
+                else if (depth == 2) testField = p.currentName();
+                else leafField = p.currentName();
+            } else {
+                scalar(p, t);
+            }
+        }
+
+        private void openStruct(JsonParser p, JsonToken t) throws IOException {
+            if (depth == 0) {
+                if (t != JsonToken.START_OBJECT) throw new IllegalArgumentException("AI reply is not a JSON object");
+                depth = 1;
+                return;
+            }
+            if (depth == 1 && "tests".equals(topField)) {
+                testsIsArray = t == JsonToken.START_ARRAY;
+                depth = 2;
+                return;
+            }
+            if (depth == 1 && "notes".equals(topField) && t == JsonToken.START_ARRAY) {
+                depth = 2;
+                return;
+            }
+            if (depth == 1 && isStringField(topField)) {
+                throw new IllegalArgumentException("\"" + topField + "\" must be a string");
+            }
+            if (depth == 1 && "interpretation".equals(topField)) {
+                // kept as its JSON text; copying leaves the parser on the closing token
+                StringWriter json = new StringWriter();
+                try (JsonGenerator generator = FACTORY.createGenerator(json)) {
+                    generator.copyCurrentStructure(p);
+                }
+                report.setInterpretation(json.toString());
+                return;
+            }
+            if (depth == 2 && "tests".equals(topField) && t == JsonToken.START_OBJECT) {
+                currentTest = new TestResult();
+                if (!testsIsArray) currentTest.setName(testField);
+                pendingRange = null;
+                depth = 3;
+                return;
+            }
+            // anything else: skip the whole structure
+            skipBase = depth;
+            depth++;
+        }
+
+        private void closeStruct() {
+            depth--;
+            if (depth == 2 && currentTest != null) {
+                LabValueParser.applyRange(currentTest, pendingRange);
+                if (currentTest.getName() != null) report.getTests().add(currentTest);
+                currentTest = null;
+            } else if (depth == 0) {
+                done = true;
+            }
+        }
+
+        private void scalar(JsonParser p, JsonToken t) throws IOException {
+            String text = t == JsonToken.VALUE_NULL ? null : p.getText();
+
+            if (depth == 1) {
+                if (isStringField(topField) && t != JsonToken.VALUE_STRING && t != JsonToken.VALUE_NULL) {
+                    throw new IllegalArgumentException("\"" + topField + "\" must be a string");
+                }
+                switch (topField == null ? "" : topField) {
+                    case "summary" -> { report.setSummary(text); sawSummary = true; }
+                    case "docType" -> report.setDocType(text);
+                    case "patientName" -> report.setPatientName(text);
+                    case "notes" -> report.setNotes(text);
+                    case "interpretation" -> report.setInterpretation(text);
+                    default -> { /* unknown or null tests: ignore */ }
+                }
+            } else if (depth == 2 && "notes".equals(topField)) {
+                if (text != null) report.setNotes(report.getNotes() == null ? text : report.getNotes() + "\n" + text);
+            } else if (depth == 2 && "tests".equals(topField) && !testsIsArray) {
+                TestResult test = new TestResult();
+                test.setName(testField);
+                LabValueParser.applyValue(test, text);
+                report.getTests().add(test);
+            } else if (depth == 3 && currentTest != null && text != null) {
+                switch (leafField == null ? "" : leafField) {
+                    case "name", "test", "testName" -> currentTest.setName(text);
+                    case "value", "result" -> LabValueParser.applyValue(currentTest, text);
+                    case "unit", "units" -> currentTest.setUnit(text);
+                    case "range", "referenceRange", "reference_range", "normalRange" -> pendingRange = text;
+                    case "refLow" -> currentTest.setRefLow(LabValueParser.parseNumber(text));
+                    case "refHigh" -> currentTest.setRefHigh(LabValueParser.parseNumber(text));
+                    case "interpretation", "flag", "status" -> currentTest.setInterpretation(text);
+                    default -> { /* ignore */ }
+                }
+            }
+        }
+
+        private static boolean isStringField(String field) {
+            return "summary".equals(field) || "docType".equals(field) || "patientName".equals(field);
+        }
+    }
+}
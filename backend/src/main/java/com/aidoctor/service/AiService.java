@@ -1,14 +1,37 @@
 package com.aidoctor.service;
 
+import com.aidoctor.model.LlmMessage;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 public class AiService {
 
+    // SYSTEM prompt
+    private static final String CHAT_SYSTEM_PROMPT = """
+            You are an expert medical doctor.
+            Give simple, accurate medical explanations.
+            Always provide:
+            - explanation
+            - symptoms
+            - possible causes
+            - recommended next steps
+            """;
+
+    private static final PromptTemplate CHAT_USER_PROMPT =
+            PromptTemplate.compile("Interpret this medical message or question:\n\n{{text}}");
+
     private final OpenAIService openAIService;
+    private final ConversationStore conversations;
+    private final IntentRouter intents;
 
-    public AiService(OpenAIService openAIService) {
+    public AiService(OpenAIService openAIService, ConversationStore conversations, IntentRouter intents) {
         this.openAIService = openAIService;
+        this.conversations = conversations;
+        this.intents = intents;
     }
 
     /**
@@ -16,33 +39,67 @@ public class AiService {
      */
     public String simpleChat(String userText) {
 
-        if (userText == null || userText.isBlank()) {
-            return "Hello, I'm Dr. Raghav 👨‍⚕️.\nHow can I help you today?";
-        }
+        String local = intents.reply(userText);
+        if (local != null) return local;
+
+        return openAIService.askOpenAI("simpleChat", CHAT_SYSTEM_PROMPT, chatUserPrompt(userText));
+    }
+
+    /**
+     * Id of the conversation to continue: the client's conversationId when the
+     * server issued it and it is still live, otherwise a new one. Never derived
+     * from anything the client chose, such as its userId.
+     */
+    public String conversation(String conversationId) {
+        return conversations.session(conversationId);
+    }
+
+    /**
+     * Multi-turn chat: the conversation's earlier turns (recent ones verbatim,
+     * older ones as a summary) are sent along, and this turn is remembered.
+     * Without a conversationId this is the same as simpleChat.
+     */
+    public String simpleChat(String conversationId, String userText) {
+
+        // mid-consult, "is this safe?" is about the conversation, not the privacy FAQ
+        String local = intents.reply(userText, conversations.hasTurns(conversationId));
+        if (local != null) return local;
+        if (conversationId == null) return simpleChat(userText);
+
+        String reply = openAIService.chat("simpleChat", conversationMessages(conversationId, userText));
+        conversations.record(conversationId, userText, reply);
+        return reply;
+    }
 
-        // friendly greeting without OpenAI
-        if (userText.toLowerCase().contains("hello") ||
-                userText.toLowerCase().contains("hi") ||
-                userText.toLowerCase().contains("hey")) {
-            return "Hi, I'm Dr. Raghav 👨‍⚕️.\nYou can ask me anything or upload your medical report.";
+    /**
+     * Same as simpleChat, but streams the reply as it is generated.
+     */
+    public Flux<String> streamChat(String conversationId, String userText) {
+
+        String local = intents.reply(userText, conversations.hasTurns(conversationId));
+        if (local != null) return Flux.just(local);
+        if (conversationId == null) {
+            return openAIService.streamOpenAI("streamChat", CHAT_SYSTEM_PROMPT, chatUserPrompt(userText));
         }
 
-        // SYSTEM prompt
-        String systemPrompt = """
-                You are an expert medical doctor.
-                Give simple, accurate medical explanations.
-                Always provide:
-                - explanation
-                - symptoms
-                - possible causes
-                - recommended next steps
-                """;
+        // remember the turn once the whole reply has streamed out
+        StringBuilder reply = new StringBuilder();
+        return openAIService.streamChat("streamChat", conversationMessages(conversationId, userText))
+                .doOnNext(reply::append)
+                .doOnComplete(() -> conversations.record(conversationId, userText, reply.toString()));
+    }
 
-        // USER prompt
-        String userPrompt =
-                "Interpret this medical message or question:\n\n" + userText;
+    private List<LlmMessage> conversationMessages(String conversationId, String userText) {
+        List<LlmMessage> messages = new ArrayList<>();
+        messages.add(LlmMessage.system(CHAT_SYSTEM_PROMPT));
+        messages.addAll(conversations.context(conversationId));
+        messages.add(LlmMessage.user(chatUserPrompt(userText)));
+        return messages;
+    }
 
-        return openAIService.askOpenAI(systemPrompt, userPrompt);
+    // USER prompt
+    private String chatUserPrompt(String userText) {
+        return CHAT_USER_PROMPT.render(userText);
     }
 
     /** Called from OCR pipeline - AI fixes broken text */
@@ -51,7 +108,7 @@ public class AiService {
         String systemPrompt = "You are a medical OCR correction assistant.";
         String userPrompt = "Fix and clean this OCR text:\n\n" + text;
 
-        return openAIService.askOpenAI(systemPrompt, userPrompt);
+        return openAIService.askOpenAI("fixBrokenMedicalText", systemPrompt, userPrompt);
     }
 
     /** AI classification of document type */
@@ -60,7 +117,24 @@ public class AiService {
         String systemPrompt = "You classify documents into: Prescription, Lab Report, Diagnostic Report, Form, Other.";
         String userPrompt = "Classify this document:\n\n" + text;
 
-        return openAIService.askOpenAI(systemPrompt, userPrompt);
+        return openAIService.askOpenAI("classifyDocumentWithAi", systemPrompt, userPrompt);
+    }
+
+    /**
+     * One structured call that replaces classify + interpret + summarize.
+     * The reply is a JSON object with keys docType, interpretation, summary.
+     */
+    public String analyzeReport(String text) {
+
+        String systemPrompt = """
+                You are a senior medical doctor reviewing a document.
+                Output JSON only, with exactly these keys:
+                - "docType": one of Prescription, Lab Report, Diagnostic Report, Form, Other
+                - "interpretation": object with findings, conditions and recommendations
+                - "summary": two or three plain sentences for the patient
+                """;
+
+        return openAIService.askOpenAI("analyzeReport", systemPrompt, "Document text:\n\n" + text);
     }
 
     /** AI medical interpretation of report */
@@ -76,6 +150,6 @@ public class AiService {
                 "Extracted Text:\n" + text +
                 "\n\nTests Found:\n" + tests.toString();
 
-        return openAIService.askOpenAI(systemPrompt, userPrompt);
+        return openAIService.askOpenAI("summarizeAndInterpret", systemPrompt, userPrompt);
     }
 }
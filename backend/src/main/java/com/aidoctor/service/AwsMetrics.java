@@ -0,0 +1,99 @@
+package com.aidoctor.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bridges AWS SDK client metrics to Micrometer (/actuator/prometheus).
+ * Registered on every AWS client by AwsConfig.
+ *
+ *  aws.requests        timer   service, operation, outcome (success | error)
+ *  aws.retries         counter service, operation
+ *  aws.http.acquire    timer   service — wait for a pooled connection
+ *  aws.http.leased / aws.http.pending   gauges per service, as of the latest call
+ */
+@Component
+public class AwsMetrics implements MetricPublisher {
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> leased = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> pending = new ConcurrentHashMap<>();
+
+    public AwsMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void publish(MetricCollection call) {
+        String service = first(call, CoreMetric.SERVICE_ID, "unknown");
+        String operation = first(call, CoreMetric.OPERATION_NAME, "unknown");
+
+        Duration duration = first(call, CoreMetric.API_CALL_DURATION, null);
+        if (duration != null) {
+            boolean success = first(call, CoreMetric.API_CALL_SUCCESSFUL, false);
+            Timer.builder("aws.requests")
+                    .tag("service", service)
+                    .tag("operation", operation)
+                    .tag("outcome", success ? "success" : "error")
+                    .register(registry)
+                    .record(duration);
+        }
+
+        int retries = first(call, CoreMetric.RETRY_COUNT, 0);
+        if (retries > 0) {
+            Counter.builder("aws.retries")
+                    .tag("service", service)
+                    .tag("operation", operation)
+                    .register(registry)
+                    .increment(retries);
+        }
+
+        // attempts carry the HTTP client metrics
+        call.childrenWithName("ApiCallAttempt")
+                .flatMap(attempt -> attempt.childrenWithName("HttpClient"))
+                .forEach(http -> recordHttp(service, http));
+    }
+
+    private void recordHttp(String service, MetricCollection http) {
+        Duration acquire = first(http, HttpMetric.CONCURRENCY_ACQUIRE_DURATION, null);
+        if (acquire != null) {
+            Timer.builder("aws.http.acquire").tag("service", service).register(registry).record(acquire);
+        }
+        Integer leasedNow = first(http, HttpMetric.LEASED_CONCURRENCY, null);
+        if (leasedNow != null) gauge(leased, "aws.http.leased", service).set(leasedNow);
+        Integer pendingNow = first(http, HttpMetric.PENDING_CONCURRENCY_ACQUIRES, null);
+        if (pendingNow != null) gauge(pending, "aws.http.pending", service).set(pendingNow);
+    }
+
+    private AtomicInteger gauge(Map<String, AtomicInteger> gauges, String name, String service) {
+        return gauges.computeIfAbsent(service, s -> {
+            AtomicInteger value = new AtomicInteger();
+            Gauge.builder(name, value, AtomicInteger::get).tag("service", s).register(registry);
+            return value;
+        });
+    }
+
+    private static <T> T first(MetricCollection collection, SdkMetric<T> metric, T fallback) {
+        List<T> values = collection.metricValues(metric);
+        return values.isEmpty() || values.get(0) == null ? fallback : values.get(0);
+    }
+
+    @Override
+    public void close() {
+        // meters belong to the registry
+    }
+}
@@ -0,0 +1,223 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.LlmMessage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Per-conversation chat memory.
+ *  - conversations are keyed by an unguessable id that only this store issues
+ *    (see session); a client can never pick the key, so it cannot read or write
+ *    another patient's history by sending their user id
+ *  - the last chat.memory.max-turns turns are kept verbatim
+ *  - older turns are folded into a rolling summary by a background LLM call
+ *  - the context sent to the model stays under chat.memory.token-budget (approx. 4 chars/token)
+ *  - sessions are evicted after chat.memory.idle-ttl or beyond chat.memory.max-sessions
+ */
+@Component
+public class ConversationStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationStore.class);
+
+    private static final String COMPACT_SYSTEM_PROMPT =
+            "You maintain the running summary of a patient's conversation with a doctor. " +
+            "Merge the previous summary and the new turns into one concise summary (max 120 words). " +
+            "Keep symptoms, durations, medications, test values, allergies and advice already given.";
+
+    private final OpenAIService openAIService;
+    private final ExecutorService llmExecutor;
+
+    @Value("${chat.memory.max-turns:6}")
+    private int maxTurns;
+
+    @Value("${chat.memory.token-budget:3000}")
+    private int tokenBudget;
+
+    @Value("${chat.memory.max-sessions:10000}")
+    private long maxSessions;
+
+    @Value("${chat.memory.idle-ttl:30m}")
+    private Duration idleTtl;
+
+    private final SecureRandom random = new SecureRandom();
+    private Cache<String, Conversation> sessions;
+
+    public ConversationStore(OpenAIService openAIService, ExecutorService llmExecutor) {
+        this.openAIService = openAIService;
+        this.llmExecutor = llmExecutor;
+    }
+
+    @PostConstruct
+    public void init() {
+        sessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(idleTtl)
+                .build();
+    }
+
+    /**
+     * The given conversation id when this store issued it and it has not expired,
+     * otherwise a newly issued id for an empty conversation.
+     */
+    public String session(String conversationId) {
+        if (conversationId != null && sessions.getIfPresent(conversationId) != null) return conversationId;
+
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String id = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(id, new Conversation());
+        return id;
+    }
+
+    /** True when the conversation has recorded turns (or a summary of them). */
+    public boolean hasTurns(String conversationId) {
+        if (conversationId == null) return false;
+        Conversation c = sessions.getIfPresent(conversationId);
+        return c != null && !c.isEmpty();
+    }
+
+    /**
+     * Messages to put between the system prompt and the new user message:
+     * the summary (if any) followed by the most recent turns, within the token budget.
+     */
+    public List<LlmMessage> context(String conversationId) {
+        if (conversationId == null) return List.of();
+        Conversation c = sessions.getIfPresent(conversationId);
+        return c == null ? List.of() : c.context(tokenBudget * 4);
+    }
+
+    /**
+     * Records one finished turn and schedules compaction when over the limits.
+     * Ids this store did not issue (or that expired meanwhile) are ignored.
+     */
+    public void record(String conversationId, String userText, String reply) {
+        if (conversationId == null) return;
+        Conversation c = sessions.getIfPresent(conversationId);
+        if (c == null) return;
+        List<Turn> toFold = c.append(new Turn(userText, reply), maxTurns, tokenBudget * 4);
+        if (!toFold.isEmpty()) {
+            llmExecutor.execute(() -> compact(c, toFold));
+        }
+    }
+
+    public void clear(String conversationId) {
+        if (conversationId != null) sessions.invalidate(conversationId);
+    }
+
+    private void compact(Conversation c, List<Turn> turns) {
+        StringBuilder prompt = new StringBuilder();
+        String previous = c.summary();
+        prompt.append("Previous summary:\n").append(previous == null ? "(none)" : previous).append("\n\nNew turns:\n");
+        for (Turn t : turns) {
+            prompt.append("Patient: ").append(t.user()).append('\n')
+                  .append("Doctor: ").append(t.reply()).append('\n');
+        }
+        // on failure or a placeholder reply the turns stay pending and the previous
+        // summary stays in place; the next compaction retries them
+        try {
+            String summary = openAIService.askOpenAI("compactConversation", COMPACT_SYSTEM_PROMPT, prompt.toString());
+            if (OpenAIService.isAnswer(summary)) {
+                c.folded(turns, summary);
+                return;
+            }
+            log.debug("Conversation compaction skipped: {}", summary);
+        } catch (RuntimeException e) {
+            log.debug("Conversation compaction failed: {}", e.getMessage());
+        }
+        c.foldFailed();
+    }
+
+    private record Turn(String user, String reply) {
+        int chars() {
+            return (user == null ? 0 : user.length()) + (reply == null ? 0 : reply.length());
+        }
+    }
+
+    /** One conversation's memory. All access is synchronized on the instance. */
+    private static final class Conversation {
+
+        private final Deque<Turn> recent = new ArrayDeque<>();
+        // turns taken out of 'recent' whose summary is still being written
+        private final List<Turn> folding = new ArrayList<>();
+        private String summary;
+        private boolean compacting;
+
+        synchronized String summary() {
+            return summary;
+        }
+
+        synchronized boolean isEmpty() {
+            return summary == null && recent.isEmpty() && folding.isEmpty();
+        }
+
+        synchronized List<Turn> append(Turn turn, int maxTurns, int charBudget) {
+            recent.addLast(turn);
+            if (compacting) return List.of();
+
+            int chars = summary == null ? 0 : summary.length();
+            for (Turn t : recent) chars += t.chars();
+
+            List<Turn> toFold = new ArrayList<>();
+            // always keep the newest turn verbatim
+            while (recent.size() > 1 && (recent.size() > maxTurns || chars > charBudget)) {
+                Turn oldest = recent.pollFirst();
+                chars -= oldest.chars();
+                toFold.add(oldest);
+            }
+            // also retries turns left over from a failed compaction
+            folding.addAll(toFold);
+            if (folding.isEmpty()) return List.of();
+            compacting = true;
+            return List.copyOf(folding);
+        }
+
+        synchronized void folded(List<Turn> turns, String newSummary) {
+            folding.removeAll(turns);
+            summary = newSummary;
+            compacting = false;
+        }
+
+        synchronized void foldFailed() {
+            compacting = false;
+        }
+
+        synchronized List<LlmMessage> context(int charBudget) {
+            List<LlmMessage> out = new ArrayList<>();
+            int used = 0;
+            if (summary != null) {
+                out.add(LlmMessage.system("Summary of the earlier conversation: " + summary));
+                used += summary.length();
+            }
+
+            // newest first until the budget is spent, then restore chronological order
+            List<Turn> chosen = new ArrayList<>();
+            List<Turn> all = new ArrayList<>(folding);
+            all.addAll(recent);
+            for (int i = all.size() - 1; i >= 0; i--) {
+                Turn t = all.get(i);
+                if (used + t.chars() > charBudget && !chosen.isEmpty()) break;
+                chosen.add(t);
+                used += t.chars();
+            }
+            for (int i = chosen.size() - 1; i >= 0; i--) {
+                out.add(LlmMessage.user(chosen.get(i).user()));
+                out.add(LlmMessage.assistant(chosen.get(i).reply()));
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.aidoctor.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local medical / non-medical classifier: multinomial naive Bayes over hashed
+ * word unigrams and bigrams. Trained at startup from classifier/medical.txt and
+ * classifier/non_medical.txt (one example per line). A classification is a
+ * single pass over the text with no allocation per token, i.e. microseconds.
+ *
+ * The confidence is the sigmoid of the summed log-odds (plus the prior), so it grows
+ * with the amount of evidence: a full lab report scores near 1.0, a two-line note
+ * near 0.5. The sum is divided by TEMPERATURE because unigrams and their bigrams
+ * (and the terms of one report section) are far from independent, which makes raw
+ * naive Bayes overconfident. Features never seen in training are skipped, since
+ * smoothing alone would give each of them the same pull toward the class with more
+ * training text. Two or more distinct STRONG_TERMS decide MEDICAL outright.
+ * See DocumentClassifierTest for the held-out documents the scale was checked on.
+ */
+@Component
+public class DocumentClassifier {
+
+    /** Label plus posterior probability of that label (0.5 .. 1.0). */
+    public record Result(boolean medical, double confidence) {}
+
+    private static final int BUCKETS = 1 << 16;
+    private static final double ALPHA = 0.5; // additive smoothing
+    private static final int MEDICAL = 0;
+    private static final int NON_MEDICAL = 1;
+
+    // only the head of a document is scored; it carries the decisive vocabulary
+    private static final int MAX_CHARS = 8000;
+
+    // correlated features: summed log-odds overstate the evidence by about this factor
+    private static final double TEMPERATURE = 4.0;
+
+    // analytes, units and prescription markers that no other kind of document uses
+    private static final String[] STRONG_TERMS = {
+            "hemoglobin", "haemoglobin", "platelet", "platelets", "creatinine", "cholesterol",
+            "triglycerides", "hba1c", "tsh", "bilirubin", "sgpt", "sgot", "leucocyte", "wbc",
+            "mg/dl", "g/dl", "ng/ml", "uiu/ml", "mmhg", "mbbs", "rx", "diagnosis"
+    };
+    private static final int STRONG_HITS = 2;
+    private static final int[] STRONG_TOKENS = new int[STRONG_TERMS.length];
+
+    static {
+        for (int i = 0; i < STRONG_TERMS.length; i++) {
+            int[] token = new int[1];
+            forEachToken(STRONG_TERMS[i], t -> token[0] = t);
+            STRONG_TOKENS[i] = token[0];
+        }
+    }
+
+    private final float[][] logLikelihood = new float[2][BUCKETS];
+    private final boolean[] known = new boolean[BUCKETS];
+    private final double[] logPrior = new double[2];
+
+    @PostConstruct
+    public void train() throws IOException {
+        double[][] counts = new double[2][BUCKETS];
+        int[] docs = new int[2];
+        docs[MEDICAL] = accumulate("classifier/medical.txt", counts[MEDICAL]);
+        docs[NON_MEDICAL] = accumulate("classifier/non_medical.txt", counts[NON_MEDICAL]);
+
+        for (int c = 0; c < 2; c++) {
+            double total = 0;
+            for (double n : counts[c]) total += n;
+            double denominator = Math.log(total + ALPHA * BUCKETS);
+            for (int f = 0; f < BUCKETS; f++) {
+                logLikelihood[c][f] = (float) (Math.log(counts[c][f] + ALPHA) - denominator);
+            }
+            logPrior[c] = Math.log((double) docs[c] / (docs[MEDICAL] + docs[NON_MEDICAL]));
+        }
+        for (int f = 0; f < BUCKETS; f++) {
+            known[f] = counts[MEDICAL][f] > 0 || counts[NON_MEDICAL][f] > 0;
+        }
+    }
+
+    public Result classify(String text) {
+        if (text == null || text.isBlank()) return new Result(false, 1.0);
+
+        // bit i set = STRONG_TERMS[i] occurs
+        long[] strong = new long[1];
+        forEachToken(text, t -> {
+            for (int i = 0; i < STRONG_TOKENS.length; i++) {
+                if (STRONG_TOKENS[i] == t) strong[0] |= 1L << i;
+            }
+        });
+        if (Long.bitCount(strong[0]) >= STRONG_HITS) return new Result(true, 1.0);
+
+        // summed log-odds MEDICAL vs NON_MEDICAL over the features seen in training
+        double[] evidence = new double[1];
+        forEachFeature(text, f -> {
+            if (known[f]) evidence[0] += logLikelihood[MEDICAL][f] - logLikelihood[NON_MEDICAL][f];
+        });
+
+        double logOdds = logPrior[MEDICAL] - logPrior[NON_MEDICAL] + evidence[0] / TEMPERATURE;
+        double confidence = 1.0 / (1.0 + Math.exp(-Math.abs(logOdds)));
+        return new Result(logOdds >= 0, confidence);
+    }
+
+    private int accumulate(String resource, double[] counts) throws IOException {
+        int docs = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource(resource).getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                forEachFeature(line, f -> counts[f]++);
+                docs++;
+            }
+        }
+        return docs;
+    }
+
+    private interface FeatureSink {
+        void accept(int bucket);
+    }
+
+    /** Emits the hash bucket of every unigram and bigram. */
+    private static void forEachFeature(String text, FeatureSink sink) {
+        int[] previous = new int[1];
+        boolean[] hasPrevious = new boolean[1];
+        forEachToken(text, unigram -> {
+            sink.accept(unigram & (BUCKETS - 1));
+            if (hasPrevious[0]) sink.accept(mix(previous[0] * 0x9E3779B1 + unigram) & (BUCKETS - 1));
+            previous[0] = unigram;
+            hasPrevious[0] = true;
+        });
+    }
+
+    /**
+     * Tokenizes on letters/digits (plus / . % inside tokens, so "mg/dl" and "13.5" stay whole),
+     * lower-cases on the fly and emits the mixed hash of every token.
+     */
+    private static void forEachToken(String text, FeatureSink sink) {
+        int end = Math.min(text.length(), MAX_CHARS);
+        int hash = 0;
+        boolean inToken = false;
+
+        for (int i = 0; i <= end; i++) {
+            char ch = i < end ? Character.toLowerCase(text.charAt(i)) : ' ';
+            boolean tokenChar = Character.isLetterOrDigit(ch)
+                    || (inToken && (ch == '/' || ch == '.' || ch == '%'));
+            if (tokenChar) {
+                hash = 31 * hash + ch;
+                inToken = true;
+            } else if (inToken) {
+                sink.accept(mix(hash));
+                hash = 0;
+                inToken = false;
+            }
+        }
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,216 @@
+package com.aidoctor.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Shrinks phone photos before they go to Textract: decode (subsampled when far
+ * too large), scale so the long edge is at most ocr.image.max-long-edge pixels
+ * (about 300 DPI for an A4 page), convert to grayscale, straighten a small skew
+ * and re-encode as JPEG. Runs on the bounded cpuExecutor.
+ *
+ * Small images are left alone, and so is anything that fails to decode or does
+ * not get smaller: the caller then sends the original.
+ */
+@Component
+public class ImagePreprocessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+    // deskew search: +-MAX_SKEW degrees in SKEW_STEP steps, on a copy this wide
+    private static final double MAX_SKEW = 5.0;
+    private static final double SKEW_STEP = 0.25;
+    private static final int SKEW_SAMPLE_WIDTH = 800;
+    private static final double MIN_SKEW = 0.3;
+    private static final int DARK = 128;
+
+    private final ExecutorService cpuExecutor;
+
+    @Value("${ocr.image.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.image.min-bytes:1048576}")
+    private long minBytes;
+
+    @Value("${ocr.image.max-long-edge:3000}")
+    private int maxLongEdge;
+
+    @Value("${ocr.image.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    public ImagePreprocessor(ExecutorService cpuExecutor) {
+        this.cpuExecutor = cpuExecutor;
+    }
+
+    /**
+     * Completes with the preprocessed JPEG of the image file, or with null when the
+     * original should be sent as is; never exceptionally.
+     */
+    public CompletableFuture<byte[]> prepareAsync(Path image, long size) {
+        if (!enabled || size < minBytes) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.supplyAsync(() -> process(image, size), cpuExecutor)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.warn("Image preprocessing failed, sending original: {}", cause.getMessage());
+                    return null;
+                });
+    }
+
+    private byte[] process(Path image, long size) {
+        try {
+            BufferedImage gray = decodeGray(image);
+            if (gray == null) return null;
+
+            double skew = detectSkew(gray);
+            if (Math.abs(skew) >= MIN_SKEW) gray = rotate(gray, -skew);
+
+            byte[] jpeg = encodeJpeg(gray);
+            log.debug("Preprocessed image {} -> {} bytes, {}x{}, skew {}",
+                    size, jpeg.length, gray.getWidth(), gray.getHeight(), skew);
+            return jpeg.length < size ? jpeg : null;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // decodes with integer subsampling first, then scales the rest of the way while converting to gray
+    private BufferedImage decodeGray(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                double scale = Math.min(1.0, (double) maxLongEdge / Math.max(width, height));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsample = (int) Math.floor(1 / scale);
+                if (subsample >= 2) param.setSourceSubsampling(subsample, subsample, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+
+                int targetWidth = Math.max(1, (int) Math.round(width * scale));
+                int targetHeight = Math.max(1, (int) Math.round(height * scale));
+                BufferedImage gray = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_BYTE_GRAY);
+                Graphics2D g = gray.createGraphics();
+                try {
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g.drawImage(decoded, 0, 0, targetWidth, targetHeight, null);
+                } finally {
+                    g.dispose();
+                }
+                return gray;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Skew angle in degrees by projection profile: dark pixels of a small copy are
+     * projected onto the y axis at each candidate angle; text lines are level where
+     * the row histogram is most sharply peaked (largest sum of squares).
+     */
+    private static double detectSkew(BufferedImage gray) {
+        double factor = Math.min(1.0, (double) SKEW_SAMPLE_WIDTH / gray.getWidth());
+        int width = Math.max(1, (int) (gray.getWidth() * factor));
+        int height = Math.max(1, (int) (gray.getHeight() * factor));
+        BufferedImage sample = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = sample.createGraphics();
+        g.drawImage(gray, 0, 0, width, height, null);
+        g.dispose();
+
+        byte[] pixels = ((DataBufferByte) sample.getRaster().getDataBuffer()).getData();
+        int count = 0;
+        int[] xs = new int[pixels.length];
+        int[] ys = new int[pixels.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[y * width + x] & 0xFF) < DARK) {
+                    xs[count] = x;
+                    ys[count] = y;
+                    count++;
+                }
+            }
+        }
+        if (count == 0) return 0;
+
+        int diagonal = (int) Math.ceil(Math.hypot(width, height));
+        long[] rows = new long[2 * diagonal + 1];
+        double bestAngle = 0;
+        double bestScore = -1;
+        for (double angle = -MAX_SKEW; angle <= MAX_SKEW + 1e-9; angle += SKEW_STEP) {
+            double radians = Math.toRadians(angle);
+            double sin = Math.sin(radians);
+            double cos = Math.cos(radians);
+            Arrays.fill(rows, 0);
+            for (int i = 0; i < count; i++) {
+                rows[(int) Math.round(ys[i] * cos - xs[i] * sin) + diagonal]++;
+            }
+            double score = 0;
+            for (long r : rows) score += (double) r * r;
+            if (score > bestScore) {
+                bestScore = score;
+                bestAngle = angle;
+            }
+        }
+        return bestAngle;
+    }
+
+    // rotates about the centre, filling the uncovered corners with white
+    private static BufferedImage rotate(BufferedImage gray, double degrees) {
+        BufferedImage rotated = new BufferedImage(gray.getWidth(), gray.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = rotated.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, rotated.getWidth(), rotated.getHeight());
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(gray, AffineTransform.getRotateInstance(
+                    Math.toRadians(degrees), gray.getWidth() / 2.0, gray.getHeight() / 2.0), null);
+        } finally {
+            g.dispose();
+        }
+        return rotated;
+    }
+
+    private byte[] encodeJpeg(BufferedImage gray) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(gray, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
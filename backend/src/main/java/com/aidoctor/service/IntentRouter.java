@@ -0,0 +1,170 @@
+package com.aidoctor.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers greetings, help and FAQ messages from the table in chat/intents.txt,
+ * so they never reach the LLM. Matching is on whole words: the intent phrases
+ * form a word trie and the message is walked once, taking the longest phrase at
+ * each word. A message is routed locally only if every word is covered by a
+ * phrase or a filler word, so "hi, I have chills" still goes to the LLM.
+ * Mid-conversation only small talk is answered here (see reply(text, midConversation)).
+ */
+@Component
+public class IntentRouter {
+
+    static final String BLANK_REPLY = "Hello, I'm Dr. Raghav 👨‍⚕️.\nHow can I help you today?";
+
+    private static final String FILLER = "filler";
+
+    // intents that read the same whatever came before; the rest ("is this safe?",
+    // "how to use it") may refer back to the conversation
+    private static final Set<String> SMALL_TALK = Set.of("greeting", "thanks", "goodbye");
+
+    // longer messages are real questions; don't bother matching them
+    private static final int MAX_WORDS = 16;
+
+    private static final class Node {
+        final Map<String, Node> next = new HashMap<>(4);
+        int intent = -1; // index of the intent a phrase ending here belongs to
+    }
+
+    private final Node root = new Node();
+    private final Set<String> fillers = new HashSet<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<String> replies = new ArrayList<>();
+
+    @PostConstruct
+    public void load() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource("chat/intents.txt").getInputStream(), StandardCharsets.UTF_8))) {
+            String intent = null;
+            StringBuilder reply = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    addIntent(intent, reply);
+                    intent = line.substring(1, line.length() - 1).strip();
+                    reply.setLength(0);
+                    if (!intent.equals(FILLER)) {
+                        names.add(intent);
+                        replies.add(null);
+                    }
+                } else if (line.startsWith("match:") && intent != null) {
+                    for (String phrase : line.substring(6).split(",")) {
+                        addPhrase(intent, tokenize(phrase));
+                    }
+                } else if (line.startsWith("reply:") && intent != null) {
+                    if (reply.length() > 0) reply.append('\n');
+                    reply.append(line.substring(6).strip());
+                } else {
+                    throw new IllegalStateException("chat/intents.txt: unexpected line '" + line + "'");
+                }
+            }
+            addIntent(intent, reply);
+        }
+    }
+
+    /**
+     * Local reply for the message, or null when it should go to the LLM.
+     */
+    public String reply(String text) {
+        return reply(text, false);
+    }
+
+    /**
+     * Same, but when the conversation already has turns only small talk (greeting,
+     * thanks, goodbye) is answered locally; anything else needs the context.
+     */
+    public String reply(String text, boolean midConversation) {
+        if (text == null || text.isBlank()) return BLANK_REPLY;
+
+        List<String> words = tokenize(text);
+        if (words.size() > MAX_WORDS) return null;
+
+        int best = -1;
+        int i = 0;
+        while (i < words.size()) {
+            // longest phrase starting at word i
+            Node node = root;
+            int matchedIntent = -1;
+            int matchedEnd = i;
+            for (int j = i; j < words.size(); j++) {
+                node = node.next.get(words.get(j));
+                if (node == null) break;
+                if (node.intent >= 0) {
+                    matchedIntent = node.intent;
+                    matchedEnd = j + 1;
+                }
+            }
+
+            if (matchedIntent >= 0) {
+                // intents declared first in the table take precedence
+                if (best < 0 || matchedIntent < best) best = matchedIntent;
+                i = matchedEnd;
+            } else if (fillers.contains(words.get(i))) {
+                i++;
+            } else {
+                return null; // a word no intent explains: a genuine question
+            }
+        }
+        if (best < 0 || (midConversation && !SMALL_TALK.contains(names.get(best)))) return null;
+        return replies.get(best);
+    }
+
+    private void addIntent(String intent, StringBuilder reply) {
+        if (intent == null || intent.equals(FILLER)) return;
+        if (reply.length() == 0) {
+            throw new IllegalStateException("chat/intents.txt: intent [" + intent + "] has no reply");
+        }
+        replies.set(names.size() - 1, reply.toString());
+    }
+
+    private void addPhrase(String intent, List<String> words) {
+        if (words.isEmpty()) return;
+        if (intent.equals(FILLER)) {
+            fillers.addAll(words);
+            return;
+        }
+        int index = names.size() - 1; // the intent whose block is being read
+        Node node = root;
+        for (String word : words) {
+            node = node.next.computeIfAbsent(word, w -> new Node());
+        }
+        if (node.intent < 0) node.intent = index;
+    }
+
+    /** Lower-cased letter/digit words; apostrophes are dropped so "what's" reads as "whats". */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            char ch = i < n ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(ch)) {
+                word.append(Character.toLowerCase(ch));
+            } else if ((ch == '\'' || ch == '\u2019') && word.length() > 0) {
+                continue;
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,162 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.OcrDocument;
+import com.aidoctor.model.TestResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads lab results straight from OCR tables (AnalyzeDocument TABLES): finds the
+ * header row naming the test and result columns plus a unit or reference range
+ * column (without one it is just some table with names and values, e.g. an invoice)
+ * and maps every row below it to a TestResult through LabValueParser.
+ * A table without a header that has as many columns as the last one read is taken
+ * as its continuation on the next page. Deterministic; no LLM involved.
+ * {@link #isLabPanel} says whether the rows read are a lab panel at all.
+ */
+public final class LabTableReader {
+
+    // header words per column, checked in this order ("Normal Value" is a range, "Test Result" a value)
+    private static final String[] RANGE_HEADERS = {"reference", "range", "normal", "interval", "limit"};
+    private static final String[] UNIT_HEADERS = {"unit"};
+    private static final String[] VALUE_HEADERS = {"result", "value", "observed", "finding"};
+    private static final String[] NAME_HEADERS = {"test", "investigation", "parameter", "analyte", "examination",
+            "description", "name"};
+
+    // analyte names (or their first word) of common panels, matched at the start of a word of the test name
+    private static final String[] ANALYTES = {
+            "haemoglobin", "hemoglobin", "hb", "wbc", "tlc", "leucocyte", "leukocyte", "neutrophil", "lymphocyte",
+            "monocyte", "eosinophil", "basophil", "platelet", "rbc", "erythrocyte", "pcv", "haematocrit",
+            "hematocrit", "mcv", "mch", "rdw", "esr", "glucose", "sugar", "hba1c", "cholesterol", "triglyceride",
+            "hdl", "ldl", "vldl", "creatinine", "urea", "bun", "uric", "egfr", "sodium", "potassium", "chloride",
+            "bicarbonate", "calcium", "phosphorus", "magnesium", "bilirubin", "sgot", "sgpt", "ast", "alt",
+            "alkaline", "ggt", "albumin", "globulin", "protein", "tsh", "t3", "t4", "vitamin", "ferritin", "iron",
+            "tibc", "crp", "psa", "inr", "prothrombin"
+    };
+
+    private static final String[] PATIENT_FIELDS = {"patient name", "patient", "name"};
+
+    // header row sits within the first rows of a table (a title row may come first)
+    private static final int MAX_HEADER_ROW = 3;
+
+    /** Column indexes of one table layout; -1 when the table has no such column. */
+    private record Layout(int columns, int name, int value, int unit, int range) {}
+
+    private LabTableReader() {}
+
+    /** Tests read from every table of the document, in document order. */
+    public static List<TestResult> read(OcrDocument document) {
+        List<TestResult> tests = new ArrayList<>();
+        Layout last = null;
+        for (int table = 0; table < document.tableCount(); table++) {
+            int headerRow = -1;
+            Layout layout = null;
+            for (int row = 0; row < Math.min(document.tableRows(table), MAX_HEADER_ROW) && layout == null; row++) {
+                layout = header(document, table, row);
+                headerRow = row;
+            }
+            if (layout == null) {
+                if (last == null || last.columns() != document.tableColumns(table)) continue;
+                layout = last;
+                headerRow = -1;
+            }
+            for (int row = headerRow + 1; row < document.tableRows(table); row++) {
+                TestResult test = test(document, table, row, layout);
+                if (test != null) tests.add(test);
+            }
+            last = layout;
+        }
+        return tests;
+    }
+
+    /**
+     * True when most rows name a known analyte: read() already required a unit or
+     * reference range column, and together the two tell a lab panel from other
+     * tables with names, values and units (an invoice, a spec sheet).
+     */
+    public static boolean isLabPanel(List<TestResult> tests) {
+        int known = 0;
+        for (TestResult test : tests) {
+            if (isAnalyte(test.getName())) known++;
+        }
+        return known > 0 && 2 * known >= tests.size();
+    }
+
+    /** Value of the form field naming the patient, or null. */
+    public static String patientName(OcrDocument document) {
+        for (String wanted : PATIENT_FIELDS) {
+            for (int field = 0; field < document.fieldCount(); field++) {
+                String key = normalize(document.fieldKey(field));
+                String value = document.fieldValue(field).strip();
+                if (key.equals(wanted) && !value.isEmpty()) return value;
+            }
+        }
+        return null;
+    }
+
+    private static Layout header(OcrDocument document, int table, int row) {
+        int name = -1, value = -1, unit = -1, range = -1;
+        for (int column = 0; column < document.tableColumns(table); column++) {
+            String text = normalize(document.cellText(table, row, column));
+            if (text.isEmpty()) continue;
+            if (range < 0 && containsAny(text, RANGE_HEADERS)) range = column;
+            else if (unit < 0 && containsAny(text, UNIT_HEADERS)) unit = column;
+            else if (value < 0 && containsAny(text, VALUE_HEADERS)) value = column;
+            else if (name < 0 && containsAny(text, NAME_HEADERS)) name = column;
+        }
+        if (name < 0 || value < 0 || (unit < 0 && range < 0)) return null;
+        return new Layout(document.tableColumns(table), name, value, unit, range);
+    }
+
+    // null for section headings ("HAEMATOLOGY") and rows without a result
+    private static TestResult test(OcrDocument document, int table, int row, Layout layout) {
+        String name = document.cellText(table, row, layout.name()).strip();
+        String value = document.cellText(table, row, layout.value()).strip();
+        if (name.isEmpty() || value.isEmpty()) return null;
+
+        TestResult test = new TestResult();
+        test.setName(name);
+        if (layout.unit() >= 0) {
+            String unit = document.cellText(table, row, layout.unit()).strip();
+            if (!unit.isEmpty()) test.setUnit(unit);
+        }
+        LabValueParser.applyValue(test, value);
+        if (layout.range() >= 0) {
+            LabValueParser.applyRange(test, document.cellText(table, row, layout.range()));
+        }
+        test.setInterpretation(interpretation(test));
+        return test;
+    }
+
+    // "low" / "high" / "normal" against the reference range, null when either is missing
+    private static String interpretation(TestResult test) {
+        Double value = test.getValue();
+        if (value == null || (test.getRefLow() == null && test.getRefHigh() == null)) return null;
+        if (test.getRefLow() != null && value < test.getRefLow()) return "low";
+        if (test.getRefHigh() != null && value > test.getRefHigh()) return "high";
+        return "normal";
+    }
+
+    private static boolean isAnalyte(String name) {
+        String words = " " + name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", " ");
+        for (String analyte : ANALYTES) {
+            if (words.contains(" " + analyte)) return true;
+        }
+        return false;
+    }
+
+    private static String normalize(String s) {
+        String t = s.strip().toLowerCase(Locale.ROOT);
+        while (t.endsWith(":") || t.endsWith(".")) t = t.substring(0, t.length() - 1).strip();
+        return t;
+    }
+
+    private static boolean containsAny(String text, String[] words) {
+        for (String word : words) {
+            if (text.contains(word)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,109 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.TestResult;
+
+/**
+ * Small parsers for lab values as they appear in reports and AI replies:
+ * "13.5 g/dL", "<5", "1,20,000", "13.0 - 17.0". No regex, no allocation
+ * beyond the resulting strings.
+ */
+public final class LabValueParser {
+
+    private LabValueParser() {}
+
+    /** Fills rawValue, and value/unit when raw starts with a number ("13.5 g/dL"). */
+    public static void applyValue(TestResult test, String raw) {
+        if (raw == null) return;
+        String trimmed = raw.strip();
+        test.setRawValue(trimmed);
+
+        int end = numberEnd(trimmed, 0);
+        if (end <= 0) return;
+        Double number = toDouble(trimmed, 0, end);
+        if (number == null) return;
+        test.setValue(number);
+
+        String rest = trimmed.substring(end).strip();
+        if (!rest.isEmpty() && test.getUnit() == null) test.setUnit(rest);
+    }
+
+    /** Parses "low - high", "low to high", "< high" or "> low" into refLow / refHigh. */
+    public static void applyRange(TestResult test, String range) {
+        if (range == null) return;
+        String s = range.strip();
+        if (s.isEmpty()) return;
+
+        char first = s.charAt(0);
+        if (first == '<' || first == '>' || first == '≤' || first == '≥') {
+            int start = skipNonNumber(s, 1);
+            Double bound = toDouble(s, start, numberEnd(s, start));
+            if (first == '<' || first == '≤') test.setRefHigh(bound); else test.setRefLow(bound);
+            return;
+        }
+
+        int lowStart = skipNonNumber(s, 0);
+        int lowEnd = numberEnd(s, lowStart);
+        if (lowEnd <= lowStart) return;
+        int highStart = skipNonNumber(s, lowEnd + 1);
+        int highEnd = numberEnd(s, highStart);
+        test.setRefLow(toDouble(s, lowStart, lowEnd));
+        if (highEnd > highStart) test.setRefHigh(toDouble(s, highStart, highEnd));
+    }
+
+    /** Leading number of s (ignoring thousands separators), or null. */
+    public static Double parseNumber(String s) {
+        if (s == null) return null;
+        String t = s.strip();
+        int start = skipNonNumber(t, 0);
+        // only accept a number at the start, optionally after a comparison sign
+        if (start > 1 || (start == 1 && "<>≤≥".indexOf(t.charAt(0)) < 0)) return null;
+        return toDouble(t, start, numberEnd(t, start));
+    }
+
+    // end index of the number starting at start (digits, one '.', ',' separators, leading '-')
+    private static int numberEnd(String s, int start) {
+        int i = start;
+        if (i < s.length() && s.charAt(i) == '-') i++;
+        boolean digits = false;
+        boolean dot = false;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else if (c != ',' || !digits) {
+                break;
+            }
+            i++;
+        }
+        // don't swallow a trailing separator ("5," or "5.")
+        while (i > start && (s.charAt(i - 1) == ',' || s.charAt(i - 1) == '.')) i--;
+        return digits ? i : start;
+    }
+
+    private static int skipNonNumber(String s, int from) {
+        int i = Math.max(0, from);
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') break;
+            if (c == '.' && i + 1 < s.length() && Character.isDigit(s.charAt(i + 1))) break;
+            i++;
+        }
+        return i;
+    }
+
+    private static Double toDouble(String s, int start, int end) {
+        if (end <= start) return null;
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c != ',') sb.append(c);
+        }
+        try {
+            return Double.parseDouble(sb.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
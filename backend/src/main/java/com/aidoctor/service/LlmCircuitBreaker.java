@@ -0,0 +1,81 @@
+package com.aidoctor.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consecutive-failure circuit breaker for the LLM provider.
+ *  - CLOSED: calls pass; openai.breaker.failure-threshold failures in a row open it
+ *  - OPEN: calls fail fast for openai.breaker.open-ms
+ *  - HALF_OPEN: one probe call is let through; success closes, failure re-opens
+ */
+@Component
+public class LlmCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    @Value("${openai.breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${openai.breaker.open-ms:30000}")
+    private long openMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probeInFlight;
+
+    /** Reserves permission for one call; false means fail fast. */
+    public synchronized boolean tryAcquirePermission() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() < openUntil) return false;
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) return false;
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    /** Read-only check, used to skip upstream work (e.g. OCR) while the provider is down. */
+    public synchronized boolean isCallPermitted() {
+        return state == State.CLOSED
+                || (state == State.OPEN && System.currentTimeMillis() >= openUntil)
+                || (state == State.HALF_OPEN && !probeInFlight);
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + openMs;
+        }
+        probeInFlight = false;
+    }
+
+    /** Permission was taken but no call outcome will follow (e.g. the caller cancelled). */
+    public synchronized void releasePermission() {
+        probeInFlight = false;
+    }
+
+    /** How long until the breaker will let a probe through (0 when closed). */
+    public synchronized long retryAfterMs() {
+        if (state != State.OPEN) return 0;
+        return Math.max(0, openUntil - System.currentTimeMillis());
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,125 @@
+package com.aidoctor.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD concurrency limit in front of the LLM provider.
+ * Each success while the limit is actually in use grows it by 1/limit
+ * (about +1 per round trip); each rate limit, server error or timeout
+ * multiplies it by openai.limiter.backoff-ratio. The limit therefore tracks
+ * what the provider can really take instead of queueing past it.
+ */
+@Component
+public class LlmConcurrencyLimiter {
+
+    @Value("${openai.limiter.initial-limit:8}")
+    private int initialLimit;
+
+    @Value("${openai.limiter.min-limit:1}")
+    private int minLimit;
+
+    @Value("${openai.limiter.max-limit:64}")
+    private int maxLimit;
+
+    @Value("${openai.limiter.backoff-ratio:0.7}")
+    private double backoffRatio;
+
+    @Value("${openai.limiter.acquire-timeout-ms:30000}")
+    private long acquireTimeoutMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private double limit;
+    private int inFlight;
+
+    @PostConstruct
+    public void init() {
+        limit = initialLimit;
+    }
+
+    /** Blocks until a slot is free; throws LlmUnavailableException on timeout. */
+    public void acquire() {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+            while (inFlight >= (int) limit) {
+                if (nanos <= 0) {
+                    throw new LlmUnavailableException("AI is busy: concurrency limit " + (int) limit + " reached", 1000);
+                }
+                nanos = available.awaitNanos(nanos);
+            }
+            inFlight++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmUnavailableException("Interrupted waiting for AI capacity", -1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Takes a slot only if one is free right now; never waits. */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) return false;
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Call finished fine: release and probe for more capacity. */
+    public void onSuccess() {
+        lock.lock();
+        try {
+            // only grow when we were close to the limit, otherwise the success says nothing about capacity
+            if (inFlight >= limit / 2) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Provider pushed back (429, 5xx, timeout): release and back off. */
+    public void onDropped() {
+        lock.lock();
+        try {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Call failed for reasons unrelated to load (bad request etc.). */
+    public void onIgnored() {
+        lock.lock();
+        try {
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    private void release() {
+        inFlight--;
+        available.signalAll();
+    }
+}
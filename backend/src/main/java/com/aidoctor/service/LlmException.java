@@ -0,0 +1,41 @@
+package com.aidoctor.service;
+
+/**
+ * Raised by {@link OpenAiClient} when a completion could not be obtained.
+ * statusCode is the HTTP status from the provider, or -1 for I/O failures.
+ * retryAfterMs is the provider's Retry-After hint, or -1 when absent.
+ */
+public class LlmException extends RuntimeException {
+
+    private final int statusCode;
+    private final long retryAfterMs;
+
+    public LlmException(String message, int statusCode) {
+        this(message, statusCode, -1);
+    }
+
+    public LlmException(String message, int statusCode, long retryAfterMs) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public LlmException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = -1;
+        this.retryAfterMs = -1;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /** Rate limits, server errors and I/O failures are worth retrying; 4xx are not. */
+    public boolean isRetryable() {
+        return statusCode == -1 || statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,93 @@
+package com.aidoctor.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides when a slow blocking LLM call gets a second, identical "hedge" request.
+ *  - the hedge is sent once the call has run longer than openai.hedge.percentile
+ *    of that operation's recent latencies (never sooner than openai.hedge.min-delay-ms)
+ *  - no hedging until openai.hedge.min-samples latencies have been seen for the operation
+ *  - a token bucket caps hedges at openai.hedge.budget of all calls (0.05 = at most 5% extra requests)
+ * Off unless openai.hedge.enabled; openai.hedge.operations limits it to the listed operations.
+ */
+@Component
+public class LlmHedgePolicy {
+
+    private static final int WINDOW = 512;        // latencies kept per operation
+    private static final int RECOMPUTE_EVERY = 32; // samples between percentile updates
+    private static final double MAX_BUDGET_TOKENS = 10;
+
+    @Value("${openai.hedge.enabled:false}")
+    private boolean enabled;
+
+    @Value("${openai.hedge.operations:}")
+    private Set<String> operations;
+
+    @Value("${openai.hedge.percentile:0.9}")
+    private double percentile;
+
+    @Value("${openai.hedge.min-delay-ms:200}")
+    private long minDelayMs;
+
+    @Value("${openai.hedge.min-samples:50}")
+    private int minSamples;
+
+    @Value("${openai.hedge.budget:0.05}")
+    private double budget;
+
+    private final ConcurrentHashMap<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private double budgetTokens;
+
+    /** Milliseconds to wait before hedging this call, or -1 to send it unhedged. */
+    public long hedgeDelayMs(String operation) {
+        if (!enabled || !(operations.isEmpty() || operations.contains(operation))) return -1;
+        synchronized (this) {
+            budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + budget);
+        }
+        LatencyWindow window = windows.get(operation);
+        long threshold = window == null ? -1 : window.threshold();
+        return threshold < 0 ? -1 : Math.max(minDelayMs, threshold);
+    }
+
+    /** Spends one hedge from the budget; false when the budget is used up. */
+    public synchronized boolean tryAcquireHedge() {
+        if (budgetTokens < 1) return false;
+        budgetTokens -= 1;
+        return true;
+    }
+
+    /** Latency of a successful primary call (never a hedge's), feeding the operation's percentile. */
+    public void record(String operation, long latencyMs) {
+        if (!enabled) return;
+        windows.computeIfAbsent(operation, op -> new LatencyWindow()).add(latencyMs);
+    }
+
+    // ring buffer of recent latencies; the percentile is re-sorted every RECOMPUTE_EVERY samples
+    private final class LatencyWindow {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+        private volatile long threshold = -1;
+
+        synchronized void add(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % WINDOW;
+            count++;
+            if (count >= minSamples && count % RECOMPUTE_EVERY == 0) {
+                long[] sorted = Arrays.copyOf(samples, Math.min(count, WINDOW));
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile * sorted.length) - 1;
+                threshold = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+            }
+        }
+
+        long threshold() {
+            return threshold;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.LlmResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Micrometer instrumentation for LLM calls, exported via /actuator/prometheus.
+ *
+ *  llm.requests          timer   operation, model, outcome (success | error | unavailable)
+ *  llm.tokens            counter operation, model, type (prompt | completion | cached)
+ *  llm.cost              counter operation, model — estimated USD from openai.pricing.*
+ *  llm.errors            counter operation, model, status
+ *  llm.cache             counter operation, result (hit | miss)
+ *  llm.hedges            counter operation, model, winner (primary | hedge)
+ *  llm.limiter.limit / llm.limiter.inflight / llm.breaker.open   gauges
+ */
+@Component
+public class LlmMetrics {
+
+    private final MeterRegistry registry;
+
+    // USD per million tokens for the configured model
+    @Value("${openai.pricing.input-per-million:0.15}")
+    private double inputPerMillion;
+
+    @Value("${openai.pricing.cached-input-per-million:0.075}")
+    private double cachedInputPerMillion;
+
+    @Value("${openai.pricing.output-per-million:0.60}")
+    private double outputPerMillion;
+
+    public LlmMetrics(MeterRegistry registry, LlmConcurrencyLimiter limiter, LlmCircuitBreaker breaker) {
+        this.registry = registry;
+        Gauge.builder("llm.limiter.limit", limiter, LlmConcurrencyLimiter::getLimit).register(registry);
+        Gauge.builder("llm.limiter.inflight", limiter, LlmConcurrencyLimiter::getInFlight).register(registry);
+        Gauge.builder("llm.breaker.open", breaker, b -> b.getState() == LlmCircuitBreaker.State.OPEN ? 1 : 0)
+                .register(registry);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void recordSuccess(Timer.Sample sample, String operation, String model, LlmResponse.Usage usage) {
+        sample.stop(timer(operation, model, "success"));
+        recordUsage(operation, model, usage);
+    }
+
+    public void recordFailure(Timer.Sample sample, String operation, String model, LlmException e) {
+        sample.stop(timer(operation, model, e instanceof LlmUnavailableException ? "unavailable" : "error"));
+    }
+
+    /** One failed attempt (retries are counted individually). */
+    public void recordError(String operation, String model, int status) {
+        Counter.builder("llm.errors")
+                .tag("operation", operation)
+                .tag("model", model)
+                .tag("status", status < 0 ? "io" : String.valueOf(status))
+                .register(registry)
+                .increment();
+    }
+
+    public void recordUsage(String operation, String model, LlmResponse.Usage usage) {
+        if (usage == null) return;
+        int cached = usage.getCachedTokens();
+        int uncachedPrompt = Math.max(0, usage.getPromptTokens() - cached);
+
+        tokens(operation, model, "prompt").increment(usage.getPromptTokens());
+        tokens(operation, model, "completion").increment(usage.getCompletionTokens());
+        tokens(operation, model, "cached").increment(cached);
+
+        double usd = (uncachedPrompt * inputPerMillion
+                + cached * cachedInputPerMillion
+                + usage.getCompletionTokens() * outputPerMillion) / 1_000_000.0;
+        Counter.builder("llm.cost")
+                .baseUnit("usd")
+                .tag("operation", operation)
+                .tag("model", model)
+                .register(registry)
+                .increment(usd);
+    }
+
+    public void recordCache(String operation, boolean hit) {
+        Counter.builder("llm.cache")
+                .tag("operation", operation)
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    /** A hedge request was sent for a slow call; winner says which of the two answered first. */
+    public void recordHedge(String operation, String model, boolean hedgeWon) {
+        Counter.builder("llm.hedges")
+                .tag("operation", operation)
+                .tag("model", model)
+                .tag("winner", hedgeWon ? "hedge" : "primary")
+                .register(registry)
+                .increment();
+    }
+
+    private Timer timer(String operation, String model, String outcome) {
+        return Timer.builder("llm.requests")
+                .tag("operation", operation)
+                .tag("model", model)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter tokens(String operation, String model, String type) {
+        return Counter.builder("llm.tokens")
+                .tag("operation", operation)
+                .tag("model", model)
+                .tag("type", type)
+                .register(registry);
+    }
+}
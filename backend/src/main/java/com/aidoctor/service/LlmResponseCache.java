@@ -0,0 +1,247 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.LlmMessage;
+import com.aidoctor.model.LlmRequest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier cache for LLM replies.
+ *  - memory: size-bounded Caffeine cache (W-TinyLFU eviction)
+ *  - disk (optional): one file per key under openai.cache.dir, survives restarts;
+ *    kept under openai.cache.max-disk-bytes by deleting the oldest files first
+ *
+ * Keys are a SHA-256 over prompt version and the whole request: model, messages,
+ * max_tokens and temperature, so calls with other limits never share a reply.
+ * Bumping openai.cache.prompt-version invalidates everything cached before.
+ * Both tiers expire entries openai.cache.ttl after they were first written; a disk
+ * hit promoted to memory keeps its original write time.
+ */
+@Component
+public class LlmResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmResponseCache.class);
+
+    // prune expired disk files once every this many writes
+    private static final int DISK_PRUNE_INTERVAL = 256;
+
+    // evict down to this share of max-disk-bytes so eviction does not run on every write
+    private static final double EVICT_TO = 0.9;
+
+    @Value("${openai.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${openai.cache.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${openai.cache.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${openai.cache.prompt-version:1}")
+    private String promptVersion;
+
+    @Value("${openai.cache.dir:}")
+    private String dir;
+
+    @Value("${openai.cache.max-disk-bytes:268435456}")
+    private long maxDiskBytes;
+
+    /** A cached reply and when it was first written, in epoch millis. */
+    private record Entry(String value, long writtenAt) {}
+
+    private Cache<String, Entry> memory;
+    private Path diskDir;
+    private final AtomicInteger writesSincePrune = new AtomicInteger();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        memory = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return remainingNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return remainingNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        if (dir != null && !dir.isBlank()) {
+            try {
+                diskDir = Files.createDirectories(Path.of(dir));
+                try (Stream<Path> files = Files.list(diskDir)) {
+                    diskBytes.set(files.mapToLong(LlmResponseCache::sizeOf).sum());
+                }
+            } catch (IOException e) {
+                log.warn("LLM cache dir {} not usable, disk tier disabled: {}", dir, e.getMessage());
+                diskDir = null;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String key(LlmRequest request) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            update(sha, promptVersion);
+            update(sha, request.getModel());
+            update(sha, String.valueOf(request.getMaxTokens()));
+            update(sha, String.valueOf(request.getTemperature()));
+            for (LlmMessage message : request.getMessages()) {
+                update(sha, message.getRole());
+                update(sha, message.getContent());
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void update(MessageDigest sha, String part) {
+        sha.update((part == null ? "" : part).getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+    }
+
+    /** Cached reply for key, or null. A disk hit is promoted to memory. */
+    public String get(String key) {
+        if (!enabled) return null;
+
+        Entry hit = memory.getIfPresent(key);
+        if (hit != null) return hit.value();
+        if (diskDir == null) return null;
+
+        Path file = diskDir.resolve(key);
+        try {
+            if (!Files.exists(file)) return null;
+            FileTime written = Files.getLastModifiedTime(file);
+            if (isExpired(written)) {
+                delete(file);
+                return null;
+            }
+            String value = Files.readString(file, StandardCharsets.UTF_8);
+            // the file's modified time is the write time, so memory expires it at the same moment
+            memory.put(key, new Entry(value, written.toMillis()));
+            return value;
+        } catch (IOException e) {
+            log.debug("LLM cache read failed for {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String key, String value) {
+        if (!enabled || value == null) return;
+
+        memory.put(key, new Entry(value, System.currentTimeMillis()));
+        if (diskDir == null) return;
+
+        Path target = diskDir.resolve(key);
+        try {
+            long previous = sizeOf(target);
+            // write then rename so readers never see a half-written entry
+            Path tmp = Files.createTempFile(diskDir, key, ".tmp");
+            Files.writeString(tmp, value, StandardCharsets.UTF_8);
+            long written = Files.size(tmp);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            diskBytes.addAndGet(written - previous);
+        } catch (IOException e) {
+            log.debug("LLM cache write failed for {}: {}", key, e.getMessage());
+        }
+
+        if (diskBytes.get() > maxDiskBytes || writesSincePrune.incrementAndGet() >= DISK_PRUNE_INTERVAL) {
+            writesSincePrune.set(0);
+            pruneDisk();
+        }
+    }
+
+    private long remainingNanos(Entry entry) {
+        long remainingMillis = entry.writtenAt() + ttl.toMillis() - System.currentTimeMillis();
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+    }
+
+    private boolean isExpired(FileTime written) {
+        return written.toInstant().plus(ttl).isBefore(Instant.now());
+    }
+
+    private void delete(Path file) throws IOException {
+        long size = sizeOf(file);
+        if (Files.deleteIfExists(file)) diskBytes.addAndGet(-size);
+    }
+
+    // drops expired files, then the oldest until the tier is back under EVICT_TO of its budget
+    private synchronized void pruneDisk() {
+        record DiskEntry(Path path, long size, long written) {}
+        List<DiskEntry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(diskDir)) {
+            files.forEach(f -> {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+                    entries.add(new DiskEntry(f, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                } catch (IOException ignored) {
+                    // another thread may have replaced or removed it
+                }
+            });
+        } catch (IOException e) {
+            log.debug("LLM cache prune failed: {}", e.getMessage());
+            return;
+        }
+
+        long total = entries.stream().mapToLong(DiskEntry::size).sum();
+        long goal = (long) (maxDiskBytes * EVICT_TO);
+        entries.sort(Comparator.comparingLong(DiskEntry::written));
+        for (DiskEntry entry : entries) {
+            boolean expired = isExpired(FileTime.fromMillis(entry.written()));
+            if (!expired && total <= goal) break;
+            try {
+                if (Files.deleteIfExists(entry.path())) total -= entry.size();
+            } catch (IOException ignored) {
+                // another thread may have replaced or removed it
+            }
+        }
+        diskBytes.set(total);
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
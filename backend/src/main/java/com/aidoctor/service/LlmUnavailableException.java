@@ -0,0 +1,20 @@
+package com.aidoctor.service;
+
+/**
+ * The LLM provider is degraded: the circuit is open, the concurrency limit
+ * could not be acquired in time, or retries were exhausted.
+ * Controllers turn this into 503 with a Retry-After header.
+ * Always raised locally, never by the provider, so it is never retried:
+ * retrying a breaker or limiter rejection would defeat them.
+ */
+public class LlmUnavailableException extends LlmException {
+
+    public LlmUnavailableException(String message, long retryAfterMs) {
+        super(message, 503, retryAfterMs);
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return false;
+    }
+}
@@ -0,0 +1,178 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.OcrDocument;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of OCR output, keyed by the SHA-256 of the uploaded bytes,
+ * so a re-uploaded file skips Textract entirely.
+ *  - memory: Caffeine, bounded by ocr.cache.max-memory-bytes of OcrDocument footprint
+ *  - disk (optional): one file per hash under ocr.cache.dir in OcrDocument's binary
+ *    form, decoded straight from a memory-mapped buffer and kept under
+ *    ocr.cache.max-disk-bytes by evicting the least recently used files (a hit
+ *    touches the file's modified time)
+ *
+ * ocr.cache.version and the OCR mode are part of the key; bump the version when the
+ * OCR pipeline changes output.
+ */
+@Component
+public class OcrResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(OcrResultCache.class);
+
+    // evict down to this share of max-disk-bytes so eviction does not run on every write
+    private static final double EVICT_TO = 0.9;
+
+    @Value("${ocr.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.cache.version:3}")
+    private String version;
+
+    @Value("${ocr.cache.max-memory-bytes:67108864}")
+    private long maxMemoryBytes;
+
+    @Value("${ocr.cache.dir:}")
+    private String dir;
+
+    @Value("${ocr.cache.max-disk-bytes:1073741824}")
+    private long maxDiskBytes;
+
+    private Cache<String, OcrDocument> memory;
+    private Path diskDir;
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        memory = Caffeine.newBuilder()
+                .maximumWeight(maxMemoryBytes)
+                .weigher((String key, OcrDocument document) -> document.sizeBytes())
+                .build();
+
+        if (dir != null && !dir.isBlank()) {
+            try {
+                diskDir = Files.createDirectories(Path.of(dir));
+                try (Stream<Path> files = Files.list(diskDir)) {
+                    diskBytes.set(files.mapToLong(OcrResultCache::sizeOf).sum());
+                }
+            } catch (IOException e) {
+                log.warn("OCR cache dir {} not usable, disk tier disabled: {}", dir, e.getMessage());
+                diskDir = null;
+            }
+        }
+    }
+
+    /** Cache key for a document, from the OCR mode and the hex SHA-256 of its bytes. */
+    public String key(String mode, String contentSha256) {
+        return "v" + version + "-" + mode + "-" + contentSha256;
+    }
+
+    /** Cached OCR result, or null. A disk hit is promoted to memory. */
+    public OcrDocument get(String key) {
+        if (!enabled) return null;
+
+        OcrDocument hit = memory.getIfPresent(key);
+        if (hit != null || diskDir == null) return hit;
+
+        Path file = diskDir.resolve(key);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            OcrDocument document = OcrDocument.readFrom(mapped);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            memory.put(key, document);
+            return document;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // includes truncated or foreign files: treat as a miss
+            log.debug("OCR cache read failed for {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String key, OcrDocument document) {
+        if (!enabled || document == null) return;
+
+        memory.put(key, document);
+        if (diskDir == null) return;
+
+        Path target = diskDir.resolve(key);
+        try {
+            long previous = sizeOf(target);
+            // write then rename so readers never map a half-written entry
+            Path tmp = Files.createTempFile(diskDir, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                document.writeTo(out);
+            }
+            long written = Files.size(tmp);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(written - previous) > maxDiskBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            log.debug("OCR cache write failed for {}: {}", key, e.getMessage());
+        }
+    }
+
+    // deletes least recently used files until the tier is back under EVICT_TO of its budget
+    private synchronized void evict() {
+        if (diskBytes.get() <= maxDiskBytes) return;
+
+        record Entry(Path path, long size, long lastUsed) {}
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(diskDir)) {
+            files.forEach(f -> {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+                    entries.add(new Entry(f, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                } catch (IOException ignored) {
+                    // removed by another thread meanwhile
+                }
+            });
+        } catch (IOException e) {
+            log.debug("OCR cache eviction failed: {}", e.getMessage());
+            return;
+        }
+
+        long total = entries.stream().mapToLong(Entry::size).sum();
+        long goal = (long) (maxDiskBytes * EVICT_TO);
+        entries.sort(Comparator.comparingLong(Entry::lastUsed));
+        for (Entry entry : entries) {
+            if (total <= goal) break;
+            try {
+                if (Files.deleteIfExists(entry.path())) total -= entry.size();
+            } catch (IOException ignored) {
+                // still mapped or in use; skip it this round
+            }
+        }
+        diskBytes.set(total);
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
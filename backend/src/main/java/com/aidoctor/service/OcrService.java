@@ -1,110 +1,435 @@
 package com.aidoctor.service;
 
+import com.aidoctor.model.OcrDocument;
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.SdkBytes;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.textract.TextractClient;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.textract.TextractAsyncClient;
 import software.amazon.awssdk.services.textract.model.*;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * OcrService - uses AWS Textract to extract text lines.
- * Reads AWS config from application.properties or environment variables.
+ * Textract and S3 are the shared async clients of AwsConfig: OCR runs as a chain
+ * of CompletableFutures, so no thread waits on Textract; PDF and image work runs
+ * on the cpuExecutor. Synchronous Textract calls (one per image or page) are capped
+ * app-wide at aws.textract.sync-max-concurrency, since their TPS quota is small and
+ * shared by every upload; calls beyond it queue without holding a thread.
  */
 @Service
 public class OcrService {
 
-    @Value("${aws.accessKeyId:}")
-    private String awsAccessKeyId;
+    private static final Logger log = LoggerFactory.getLogger(OcrService.class);
 
-    @Value("${aws.secretAccessKey:}")
-    private String awsSecretAccessKey;
+    private static final int MAX_RESULTS = 1000;
 
-    @Value("${aws.region:ap-south-1}")
-    private String awsRegion;
+    private static final String NO_TEXT = "(no text extracted)";
 
-    private TextractClient textract;
+    private static final List<FeatureType> ANALYZE_FEATURES = List.of(FeatureType.TABLES, FeatureType.FORMS);
+
+    // async (multi-page PDF) OCR: staging bucket and polling
+    @Value("${aws.textract.bucket:}")
+    private String bucket;
+
+    @Value("${aws.textract.poll-initial-ms:1000}")
+    private long pollInitialMs;
+
+    @Value("${aws.textract.poll-max-ms:5000}")
+    private long pollMaxMs;
+
+    @Value("${aws.textract.job-timeout:5m}")
+    private Duration jobTimeout;
+
+    // AnalyzeDocument (TABLES + FORMS) instead of DetectDocumentText: tables and form
+    // fields come back with the text, at a higher Textract price per page
+    @Value("${aws.textract.analyze-document:false}")
+    private boolean analyzeDocument;
+
+    // DetectDocumentText / AnalyzeDocument calls in flight across all uploads
+    @Value("${aws.textract.sync-max-concurrency:4}")
+    private int syncMaxConcurrency;
+
+    private final TextractAsyncClient textract;
+    private final S3AsyncClient s3;
+    private final UploadSpooler spooler;
+    private final PdfTextExtractor pdfText;
+    private final ImagePreprocessor images;
+    private final OcrResultCache cache;
+    private final ExecutorService cpuExecutor;
+    // one OCR run per document at a time; concurrent uploads of the same file share it
+    private final Map<String, CompletableFuture<OcrDocument>> inFlight = new ConcurrentHashMap<>();
+    private Semaphore syncPermits;
+    private final Queue<Runnable> syncWaiting = new ConcurrentLinkedQueue<>();
+
+    public OcrService(TextractAsyncClient textract, S3AsyncClient s3, UploadSpooler spooler,
+                      PdfTextExtractor pdfText, ImagePreprocessor images, OcrResultCache cache,
+                      ExecutorService cpuExecutor) {
+        this.textract = textract;
+        this.s3 = s3;
+        this.spooler = spooler;
+        this.pdfText = pdfText;
+        this.images = images;
+        this.cache = cache;
+        this.cpuExecutor = cpuExecutor;
+    }
 
     @PostConstruct
     public void init() {
-        // prefer properties; fall back to env vars
-        if ((awsAccessKeyId == null || awsAccessKeyId.isBlank()) ||
-                (awsSecretAccessKey == null || awsSecretAccessKey.isBlank())) {
+        syncPermits = new Semaphore(Math.max(1, syncMaxConcurrency));
+    }
 
-            String envKey = System.getenv("AWS_ACCESS_KEY_ID");
-            String envSecret = System.getenv("AWS_SECRET_ACCESS_KEY");
-            String envRegion = System.getenv("AWS_REGION");
+    /**
+     * Extracts plain text from image/PDF: the text of {@link #extractDocument},
+     * or "(no text extracted)".
+     */
+    public String extractText(MultipartFile file) throws IOException {
+        return plainText(extractDocument(file));
+    }
 
-            if ((envKey != null && !envKey.isBlank()) && (envSecret != null && !envSecret.isBlank())) {
-                awsAccessKeyId = envKey;
-                awsSecretAccessKey = envSecret;
-            } else {
-                // Textract won't be available — leave textract null and report helpful message when used
-                this.textract = null;
-                return;
+    /** Text of an OCR result as extractText returns it. */
+    public static String plainText(OcrDocument document) {
+        return document.isBlank() ? NO_TEXT : document.text().trim();
+    }
+
+    /** Blocking form of {@link #extractDocumentAsync}. */
+    public OcrDocument extractDocument(MultipartFile file) throws IOException {
+        try {
+            return extractDocumentAsync(file).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    /**
+     * OCR of an image/PDF with its layout (pages, lines, words, boxes, tables).
+     * PDF pages with a usable text layer are read locally (PdfTextExtractor) and
+     * never reach Textract. Of the rest, a fully scanned multi-page PDF goes
+     * through an async document job (see detectDocumentTextAsync) when
+     * aws.textract.bucket is set; otherwise, like the scanned pages of a mixed PDF,
+     * its pages are rendered and OCR'd concurrently, within the app-wide limit on
+     * synchronous Textract calls (aws.textract.sync-max-concurrency); images (downscaled and
+     * cleaned up by ImagePreprocessor) and single-page PDFs use the synchronous
+     * DetectDocumentText. With aws.textract.analyze-document the same calls go to
+     * AnalyzeDocument with TABLES and FORMS, which also fills tables and form fields.
+     * The upload is spooled to disk (UploadSpooler) before this returns and read
+     * from there, never held on the heap. Results are cached by the SHA-256 taken
+     * while spooling, so a re-uploaded file costs no OCR; concurrent uploads of the
+     * same file share one run.
+     * The future fails with an IOException when Textract or S3 does.
+     */
+    public CompletableFuture<OcrDocument> extractDocumentAsync(MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("No file provided");
+        }
+        return extractDocumentAsync(spooler.spool(file));
+    }
+
+    /**
+     * Same for an upload spooled earlier (e.g. every part of a batch while the
+     * request is still open); takes ownership of it and deletes it when done.
+     */
+    public CompletableFuture<OcrDocument> extractDocumentAsync(UploadSpooler.SpooledFile upload) throws IOException {
+        String key = cache.key(analyzeDocument ? "analyze" : "detect", upload.getSha256());
+
+        OcrDocument cached = cache.get(key);
+        if (cached != null) {
+            log.debug("OCR cache hit for {}", key);
+            upload.close();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<OcrDocument> result = new CompletableFuture<>();
+        CompletableFuture<OcrDocument> running = inFlight.putIfAbsent(key, result);
+        if (running != null) {
+            upload.close();
+            return running;
+        }
+        OcrDocument again = cache.get(key); // a concurrent upload may have just finished it
+        if (again != null) {
+            inFlight.remove(key, result);
+            upload.close();
+            result.complete(again);
+            return result;
+        }
+
+        ocr(upload).whenComplete((document, error) -> {
+            try {
+                upload.close();
+            } catch (IOException e) {
+                log.debug("Could not delete spooled upload {}: {}", upload.getPath(), e.getMessage());
+            }
+            if (error == null && !document.isBlank()) cache.put(key, document);
+            inFlight.remove(key, result);
+            if (error != null) result.completeExceptionally(failure(error));
+            else result.complete(document);
+        });
+        return result;
+    }
+
+    private CompletableFuture<OcrDocument> ocr(UploadSpooler.SpooledFile upload) {
+        CompletableFuture<List<String>> textLayer = upload.isPdf()
+                ? CompletableFuture.supplyAsync(() -> pdfText.textLayer(upload.getPath()), cpuExecutor)
+                : CompletableFuture.completedFuture(null);
+        return textLayer.thenCompose(pages -> pages == null ? ocrImage(upload) : ocrPdf(upload, pages));
+    }
+
+    // images, and files that are not a readable PDF; a large photo is shrunk first,
+    // otherwise the mapped file is copied once into the request (sync Textract takes the bytes inline)
+    private CompletableFuture<OcrDocument> ocrImage(UploadSpooler.SpooledFile upload) {
+        CompletableFuture<byte[]> prepared = upload.getMediaType().startsWith("image/")
+                ? images.prepareAsync(upload.getPath(), upload.getSize())
+                : CompletableFuture.completedFuture(null);
+        return prepared
+                .thenCompose(jpeg -> ocrBlocks(jpeg != null
+                        ? SdkBytes.fromByteArrayUnsafe(jpeg)
+                        : SdkBytes.fromByteBuffer(map(upload))))
+                .thenApply(blocks -> document(blocks, 1));
+    }
+
+    // pages holds the text layer per page, null where the page needs OCR
+    private CompletableFuture<OcrDocument> ocrPdf(UploadSpooler.SpooledFile pdf, List<String> pages) {
+        List<Integer> scanned = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            if (pages.get(i) == null) scanned.add(i + 1);
+        }
+
+        if (scanned.isEmpty()) {
+            return CompletableFuture.completedFuture(assemble(pages, Map.of()));
+        }
+        if (scanned.size() == pages.size()) {
+            if (pages.size() == 1) {
+                return ocrBlocks(SdkBytes.fromByteBuffer(map(pdf))).thenApply(blocks -> document(blocks, 1));
             }
+            // the async job needs a staging bucket; without one, OCR page by page below
+            if (bucket != null && !bucket.isBlank()) return detectDocumentTextAsync(pdf.getPath());
+        }
 
-            if (envRegion != null && !envRegion.isBlank()) awsRegion = envRegion;
+        log.debug("OCR of {} scanned page(s) out of {}", scanned.size(), pages.size());
+        return CompletableFuture.supplyAsync(() -> render(pdf.getPath(), scanned), cpuExecutor)
+                .thenCompose(rendered -> {
+                    Map<Integer, CompletableFuture<List<Block>>> ocr = new HashMap<>();
+                    rendered.forEach((page, png) -> ocr.put(page, ocrBlocks(SdkBytes.fromByteArrayUnsafe(png))));
+                    return CompletableFuture.allOf(ocr.values().toArray(CompletableFuture[]::new))
+                            .thenApply(done -> assemble(pages, ocr));
+                });
+    }
+
+    // text-layer pages and OCR'd pages, in page order
+    private static OcrDocument assemble(List<String> pages, Map<Integer, CompletableFuture<List<Block>>> ocr) {
+        OcrDocument.Builder document = OcrDocument.builder();
+        for (int page = 1; page <= pages.size(); page++) {
+            String text = pages.get(page - 1);
+            CompletableFuture<List<Block>> blocks = ocr.get(page);
+            if (text == null && blocks != null) {
+                TextractBlocks.appendPages(document, blocks.join(), 1);
+                continue;
+            }
+            document.startPage();
+            if (text == null) continue;
+            for (String line : text.split("\r?\n")) {
+                if (!line.isBlank()) document.addLine(line.strip());
+            }
         }
+        return document.build();
+    }
 
-        AwsBasicCredentials creds = AwsBasicCredentials.create(awsAccessKeyId, awsSecretAccessKey);
-        this.textract = TextractClient.builder()
-                .region(Region.of(awsRegion))
-                .credentialsProvider(StaticCredentialsProvider.create(creds))
-                .build();
+    private static OcrDocument document(List<Block> blocks, int pageCount) {
+        OcrDocument.Builder document = OcrDocument.builder();
+        TextractBlocks.appendPages(document, blocks, pageCount);
+        return document.build();
+    }
+
+    // synchronous OCR of one page (image or single-page PDF), within the sync call limit
+    private CompletableFuture<List<Block>> ocrBlocks(SdkBytes bytes) {
+        Document document = Document.builder().bytes(bytes).build();
+        if (analyzeDocument) {
+            return throttled(() -> textract.analyzeDocument(AnalyzeDocumentRequest.builder()
+                    .document(document).featureTypes(ANALYZE_FEATURES).build())
+                    .thenApply(AnalyzeDocumentResponse::blocks));
+        }
+        return throttled(() -> textract.detectDocumentText(DetectDocumentTextRequest.builder().document(document).build())
+                .thenApply(DetectDocumentTextResponse::blocks));
+    }
+
+    // starts the call once a sync permit is free; queued calls are started by the finishing ones
+    private <T> CompletableFuture<T> throttled(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        syncWaiting.add(() -> {
+            CompletableFuture<T> started;
+            try {
+                started = call.get();
+            } catch (RuntimeException e) {
+                started = CompletableFuture.failedFuture(e);
+            }
+            started.whenComplete((value, error) -> {
+                syncPermits.release();
+                startWaiting();
+                if (error != null) result.completeExceptionally(error);
+                else result.complete(value);
+            });
+        });
+        startWaiting();
+        return result;
+    }
+
+    private void startWaiting() {
+        while (!syncWaiting.isEmpty() && syncPermits.tryAcquire()) {
+            Runnable next = syncWaiting.poll();
+            if (next == null) {
+                syncPermits.release(); // another thread took it meanwhile
+            } else {
+                next.run();
+            }
+        }
     }
 
     /**
-     * Extracts plain text from image/PDF using Textract.
-     * Throws IllegalStateException if Textract not configured.
+     * Multi-page PDF: stage it in S3 (aws.textract.bucket), start a text detection
+     * (or, with analyze-document, document analysis) job, poll until it finishes,
+     * then page through the results with NextToken and build the document in page
+     * order (TextractBlocks). The staged object is deleted afterwards.
      */
-    public String extractText(MultipartFile file) throws IOException {
-        if (this.textract == null) {
-            throw new IllegalStateException(
-                    "Textract client not configured. Please set aws.accessKeyId and aws.secretAccessKey (or environment variables).");
+    private CompletableFuture<OcrDocument> detectDocumentTextAsync(Path pdf) {
+        String key = "ocr/" + UUID.randomUUID() + ".pdf";
+        long deadline = System.nanoTime() + jobTimeout.toNanos();
+        CompletableFuture<OcrDocument> result = s3
+                .putObject(PutObjectRequest.builder().bucket(bucket).key(key).contentType("application/pdf").build(),
+                        AsyncRequestBody.fromFile(pdf))
+                .thenCompose(put -> startJob(DocumentLocation.builder()
+                        .s3Object(S3Object.builder().bucket(bucket).name(key).build())
+                        .build()))
+                .thenCompose(jobId -> awaitJob(jobId, deadline, pollInitialMs)
+                        .thenCompose(first -> {
+                            int pageCount = first.metadata() == null || first.metadata().pages() == null
+                                    ? 1 : first.metadata().pages();
+                            return allBlocks(jobId, first, new ArrayList<>())
+                                    .thenApply(blocks -> document(blocks, pageCount));
+                        }));
+
+        result.whenComplete((document, error) -> s3
+                .deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build())
+                .whenComplete((deleted, e) -> {
+                    if (e != null) {
+                        log.warn("Could not delete staged OCR document s3://{}/{}: {}", bucket, key, e.getMessage());
+                    }
+                }));
+        return result;
+    }
+
+    /** One page of job results; text detection and document analysis answer in the same shape. */
+    private record JobPage(JobStatus jobStatus, String statusMessage, List<Warning> warnings,
+                           DocumentMetadata metadata, List<Block> blocks, String nextToken) {}
+
+    private CompletableFuture<String> startJob(DocumentLocation location) {
+        if (analyzeDocument) {
+            return textract.startDocumentAnalysis(StartDocumentAnalysisRequest.builder()
+                    .documentLocation(location).featureTypes(ANALYZE_FEATURES).build())
+                    .thenApply(StartDocumentAnalysisResponse::jobId);
         }
+        return textract.startDocumentTextDetection(StartDocumentTextDetectionRequest.builder()
+                .documentLocation(location).build())
+                .thenApply(StartDocumentTextDetectionResponse::jobId);
+    }
 
-        if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("No file provided");
+    private CompletableFuture<JobPage> jobPage(String jobId, String nextToken) {
+        if (analyzeDocument) {
+            return textract.getDocumentAnalysis(GetDocumentAnalysisRequest.builder()
+                    .jobId(jobId).maxResults(MAX_RESULTS).nextToken(nextToken).build())
+                    .thenApply(r -> new JobPage(r.jobStatus(), r.statusMessage(), r.warnings(),
+                            r.documentMetadata(), r.blocks(), r.nextToken()));
         }
+        return textract.getDocumentTextDetection(GetDocumentTextDetectionRequest.builder()
+                .jobId(jobId).maxResults(MAX_RESULTS).nextToken(nextToken).build())
+                .thenApply(r -> new JobPage(r.jobStatus(), r.statusMessage(), r.warnings(),
+                        r.documentMetadata(), r.blocks(), r.nextToken()));
+    }
 
-        byte[] bytes = file.getBytes();
-        SdkBytes sdkBytes = SdkBytes.fromByteArray(bytes);
+    // polls with a growing interval, scheduled rather than slept; completes with the first page of results
+    private CompletableFuture<JobPage> awaitJob(String jobId, long deadline, long delayMs) {
+        return jobPage(jobId, null).thenCompose(response -> {
+            switch (response.jobStatus()) {
+                case SUCCEEDED:
+                    return CompletableFuture.completedFuture(response);
+                case PARTIAL_SUCCESS:
+                    log.warn("Textract job {} partially succeeded: {}", jobId, response.warnings());
+                    return CompletableFuture.completedFuture(response);
+                case FAILED:
+                    return CompletableFuture.failedFuture(
+                            new IOException("Textract job failed: " + response.statusMessage()));
+                default:
+                    break; // IN_PROGRESS
+            }
 
-        Document document = Document.builder().bytes(sdkBytes).build();
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs) > deadline) {
+                return CompletableFuture.failedFuture(
+                        new IOException("Textract job " + jobId + " did not finish within " + jobTimeout));
+            }
+            return CompletableFuture
+                    .runAsync(() -> {}, CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS))
+                    .thenCompose(v -> awaitJob(jobId, deadline, Math.min(pollMaxMs, delayMs * 3 / 2)));
+        });
+    }
 
-        // Try DetectDocumentText (works for images). For PDFs you may need StartDocumentTextDetection (async).
-        DetectDocumentTextRequest request = DetectDocumentTextRequest.builder()
-                .document(document)
-                .build();
+    // follows NextToken from the first page to the last
+    private CompletableFuture<List<Block>> allBlocks(String jobId, JobPage page, List<Block> blocks) {
+        blocks.addAll(page.blocks());
+        if (page.nextToken() == null) return CompletableFuture.completedFuture(blocks);
+        return jobPage(jobId, page.nextToken()).thenCompose(next -> allBlocks(jobId, next, blocks));
+    }
 
-        DetectDocumentTextResponse response;
+    private Map<Integer, byte[]> render(Path pdf, List<Integer> pages) {
         try {
-            response = textract.detectDocumentText(request);
-        } catch (TextractException te) {
-            // wrap for controller to report
-            throw new IOException("Textract error: " + te.awsErrorDetails().errorMessage(), te);
-        }
-
-        StringBuilder sb = new StringBuilder();
-        List<Block> blocks = response.blocks();
-        if (blocks != null) {
-            for (Block b : blocks) {
-                if (b.blockType() == BlockType.LINE && b.text() != null) {
-                    sb.append(b.text()).append("\n");
-                }
-            }
+            return pdfText.render(pdf, pages);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        String extracted = sb.toString().trim();
-        if (extracted.isEmpty()) extracted = "(no text extracted)";
+    private static ByteBuffer map(UploadSpooler.SpooledFile upload) {
+        try {
+            return upload.map();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        return extracted;
+    // unwraps a failed stage into the IOException controllers report
+    private static Throwable failure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof UncheckedIOException e) return e.getCause();
+        if (cause instanceof TextractException e) {
+            return new IOException("Textract error: " + e.awsErrorDetails().errorMessage(), e);
+        }
+        if (cause instanceof SdkException e) return new IOException("AWS error: " + e.getMessage(), e);
+        return cause;
     }
 }
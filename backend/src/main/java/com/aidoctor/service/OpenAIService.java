@@ -1,80 +1,119 @@
 package com.aidoctor.service;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
+import com.aidoctor.model.LlmMessage;
+import com.aidoctor.model.LlmRequest;
+import com.aidoctor.model.LlmResponse;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
-import java.util.Map;
 
 /**
- * Simple OpenAI caller using RestTemplate --> Chat Completions.
+ * Simple OpenAI caller --> Chat Completions, via the shared OpenAiClient.
  * Reads openai.api.key from application.properties or env OPENAI_API_KEY.
+ * Successful replies are served from LlmResponseCache when the same prompt repeats,
+ * and identical prompts that arrive concurrently share one outstanding request.
  */
 @Service
 public class OpenAIService {
 
-    @Value("${openai.api.key:}")
-    private String openaiKeyProp;
+    private static final int MAX_TOKENS = 800;
 
-    private String getApiKey() {
-        if (openaiKeyProp != null && !openaiKeyProp.isBlank()) return openaiKeyProp;
-        String env = System.getenv("OPENAI_API_KEY");
-        return env == null ? "" : env;
+    // placeholder replies returned instead of an answer; see isAnswer
+    private static final String NOT_CONFIGURED = "AI not configured: OPENAI_API_KEY missing";
+    private static final String NO_CHOICES = "AI returned no choices";
+    private static final String EMPTY_CONTENT = "AI returned empty content";
+
+    private final OpenAiClient openAiClient;
+    private final LlmResponseCache cache;
+    private final LlmMetrics metrics;
+    private final SingleFlight<String> inFlight = new SingleFlight<>();
+
+    public OpenAIService(OpenAiClient openAiClient, LlmResponseCache cache, LlmMetrics metrics) {
+        this.openAiClient = openAiClient;
+        this.cache = cache;
+        this.metrics = metrics;
     }
 
     /**
      * Sends a prompt to OpenAI and returns the assistant's content as String.
-     * Returns helpful error messages if key missing or OpenAI fails.
+     * Returns a helpful message if the key is missing. Provider failures are not
+     * turned into reply text: LlmUnavailableException / LlmException propagate.
+     *
+     * @param operation calling method, used to tag metrics (e.g. "summarizeAndInterpret")
      */
-    public String askOpenAI(String systemPrompt, String userPrompt) {
-        String key = getApiKey();
-        if (key == null || key.isBlank()) {
-            return "AI not configured: OPENAI_API_KEY missing";
+    public String askOpenAI(String operation, String systemPrompt, String userPrompt) {
+        if (!openAiClient.isConfigured()) {
+            return NOT_CONFIGURED;
         }
 
-        RestTemplate rest = new RestTemplate();
-        String url = "https://api.openai.com/v1/chat/completions";
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(key);
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        // Build the messages: system + user
-        List<Map<String, String>> messages = List.of(
-                Map.of("role", "system", "content", systemPrompt),
-                Map.of("role", "user", "content", userPrompt)
-        );
-
-        Map<String, Object> payload = Map.of(
-                "model", "gpt-4o-mini",
-                "messages", messages,
-                "max_tokens", 800
-        );
-
-        HttpEntity<Map<String, Object>> req = new HttpEntity<>(payload, headers);
-        try {
-            ResponseEntity<Map> resp = rest.postForEntity(url, req, Map.class);
-            Map body = resp.getBody();
-            if (body == null) return "AI returned empty response";
-            List choices = (List) body.get("choices");
-            if (choices == null || choices.isEmpty()) return "AI returned no choices";
-            Map choice0 = (Map) choices.get(0);
-            // try both 'message' and 'text' shapes
-            Object messageObj = choice0.get("message");
-            if (messageObj instanceof Map) {
-                Map msg = (Map) messageObj;
-                Object content = msg.get("content");
-                return content == null ? "AI returned empty content" : content.toString();
-            } else if (choice0.get("text") != null) {
-                return choice0.get("text").toString();
-            } else {
-                return "AI returned an unexpected shape";
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            return "AI request failed: " + ex.getMessage();
+        LlmRequest request = LlmRequest.of(openAiClient.getDefaultModel(), systemPrompt, userPrompt, MAX_TOKENS);
+        String cacheKey = cache.key(request);
+        String cached = cache.get(cacheKey);
+        metrics.recordCache(operation, cached != null);
+        if (cached != null) return cached;
+
+        return inFlight.execute(cacheKey, () -> fetch(operation, cacheKey, request));
+    }
+
+    private String fetch(String operation, String cacheKey, LlmRequest request) {
+        // a caller that just finished the same prompt may have filled the cache
+        String cached = cache.get(cacheKey);
+        if (cached != null) return cached;
+
+        LlmResponse resp = openAiClient.complete(operation, request);
+        if (resp.getChoices() == null || resp.getChoices().isEmpty()) return NO_CHOICES;
+        String content = resp.getContent();
+        if (content == null) return EMPTY_CONTENT;
+
+        // only real answers are cached, never error strings
+        cache.put(cacheKey, content);
+        return content;
+    }
+
+    /**
+     * Multi-turn variant: sends the full message list. Conversations are unique
+     * per user, so this bypasses the response cache and in-flight coalescing.
+     */
+    public String chat(String operation, List<LlmMessage> messages) {
+        if (!openAiClient.isConfigured()) {
+            return NOT_CONFIGURED;
+        }
+        LlmRequest request = new LlmRequest(openAiClient.getDefaultModel(), messages, MAX_TOKENS);
+        String content = openAiClient.complete(operation, request).getContent();
+        return content == null ? EMPTY_CONTENT : content;
+    }
+
+    /** Streaming variant of chat(). */
+    public Flux<String> streamChat(String operation, List<LlmMessage> messages) {
+        if (!openAiClient.isConfigured()) {
+            return Flux.just(NOT_CONFIGURED);
+        }
+        return openAiClient.stream(operation, new LlmRequest(openAiClient.getDefaultModel(), messages, MAX_TOKENS));
+    }
+
+    /**
+     * False for the placeholder replies of askOpenAI / chat (AI not configured, no
+     * content) and blank replies: text a caller must not store as if the model wrote it.
+     */
+    public static boolean isAnswer(String reply) {
+        return reply != null && !reply.isBlank()
+                && !reply.equals(NOT_CONFIGURED) && !reply.equals(NO_CHOICES) && !reply.equals(EMPTY_CONTENT);
+    }
+
+    /** False while the provider is failing; callers can skip expensive upstream work. */
+    public boolean isAvailable() {
+        return openAiClient.isAvailable();
+    }
+
+    /**
+     * Streaming variant of askOpenAI: emits the reply token by token.
+     */
+    public Flux<String> streamOpenAI(String operation, String systemPrompt, String userPrompt) {
+        if (!openAiClient.isConfigured()) {
+            return Flux.just(NOT_CONFIGURED);
         }
+        LlmRequest request = LlmRequest.of(openAiClient.getDefaultModel(), systemPrompt, userPrompt, MAX_TOKENS);
+        return openAiClient.stream(operation, request);
     }
 }
@@ -1,45 +1,455 @@
 package com.aidoctor.service;
 
+import com.aidoctor.model.LlmRequest;
+import com.aidoctor.model.LlmResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.*;
-import org.json.JSONObject;
+import okio.BufferedSource;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The one client every LLM caller goes through.
+ * Uses the shared pooled OkHttpClient from OpenAiConfig and typed
+ * request/response objects. Reads openai.api.key or env OPENAI_API_KEY.
+ *
+ * Blocking calls pass through a circuit breaker (fail fast while the provider
+ * is down), an AIMD concurrency limit, and retries with jittered exponential
+ * backoff that honour Retry-After. Every call is timed and its token usage
+ * recorded in LlmMetrics, tagged with the caller-supplied operation name.
+ * With openai.hedge.enabled a slow attempt is hedged: see LlmHedgePolicy.
+ */
 @Component
 public class OpenAiClient {
 
-    @Value("${OPENAI_API_KEY}")
-    private String apiKey;
+    private static final Logger log = LoggerFactory.getLogger(OpenAiClient.class);
 
-    private final OkHttpClient client = new OkHttpClient();
+    private static final MediaType JSON = MediaType.get("application/json");
 
-    public String simpleChat(String message) {
+    private final OkHttpClient client;
+    private final ObjectMapper objectMapper;
+    private final LlmConcurrencyLimiter limiter;
+    private final LlmCircuitBreaker breaker;
+    private final LlmMetrics metrics;
+    private final LlmHedgePolicy hedging;
+
+    @Value("${openai.api.key:}")
+    private String apiKeyProp;
+
+    @Value("${openai.base-url:https://api.openai.com}")
+    private String baseUrl;
+
+    @Value("${openai.model:gpt-4o-mini}")
+    private String defaultModel;
+
+    @Value("${openai.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${openai.retry.base-delay-ms:500}")
+    private long baseDelayMs;
+
+    @Value("${openai.retry.max-delay-ms:20000}")
+    private long maxDelayMs;
+
+    public OpenAiClient(OkHttpClient openAiHttpClient, ObjectMapper objectMapper,
+                        LlmConcurrencyLimiter limiter, LlmCircuitBreaker breaker, LlmMetrics metrics,
+                        LlmHedgePolicy hedging) {
+        this.client = openAiHttpClient;
+        this.objectMapper = objectMapper;
+        this.limiter = limiter;
+        this.breaker = breaker;
+        this.metrics = metrics;
+        this.hedging = hedging;
+    }
+
+    private String getApiKey() {
+        if (apiKeyProp != null && !apiKeyProp.isBlank()) return apiKeyProp;
+        String env = System.getenv("OPENAI_API_KEY");
+        return env == null ? "" : env;
+    }
+
+    public boolean isConfigured() {
+        return !getApiKey().isBlank();
+    }
+
+    public String getDefaultModel() {
+        return defaultModel;
+    }
+
+    /** False while the circuit breaker is open; lets callers skip work that would only feed a failing call. */
+    public boolean isAvailable() {
+        return breaker.isCallPermitted();
+    }
+
+    /**
+     * Sends a chat completion and returns the typed response.
+     * Retryable failures (429, 5xx, I/O) are retried up to openai.retry.max-attempts;
+     * throws LlmUnavailableException when the provider stays degraded and
+     * LlmException for non-retryable errors.
+     *
+     * @param operation calling method, used as the metrics tag (e.g. "simpleChat")
+     */
+    public LlmResponse complete(String operation, LlmRequest request) {
+        Request httpRequest = buildHttpRequest(request);
+        return complete(operation, request.getModel(), httpRequest);
+    }
+
+    private LlmResponse complete(String operation, String model, Request httpRequest) {
+        Timer.Sample sample = metrics.start();
         try {
-            JSONObject body = new JSONObject();
-            body.put("model", "gpt-3.5-turbo");
-            body.put("messages", new JSONObject[]{
-                new JSONObject().put("role", "user").put("content", message)
+            LlmResponse response = completeWithRetries(operation, model, httpRequest);
+            metrics.recordSuccess(sample, operation, model, response.getUsage());
+            return response;
+        } catch (LlmException e) {
+            metrics.recordFailure(sample, operation, model, e);
+            log.warn("LLM call {} ({}) failed: {}", operation, model, e.getMessage());
+            throw e;
+        }
+    }
+
+    private LlmResponse completeWithRetries(String operation, String model, Request httpRequest) {
+        for (int attempt = 1; ; attempt++) {
+            limiter.acquire();
+            if (!breaker.tryAcquirePermission()) {
+                limiter.onIgnored();
+                throw new LlmUnavailableException("AI temporarily unavailable (circuit open)", breaker.retryAfterMs());
+            }
+            try {
+                LlmResponse response = execute(operation, model, httpRequest);
+                limiter.onSuccess();
+                breaker.onSuccess();
+                return response;
+            } catch (LlmUnavailableException e) {
+                // raised here (e.g. interrupted), not by the provider: no outcome, no retry
+                limiter.onIgnored();
+                breaker.releasePermission();
+                throw e;
+            } catch (LlmException e) {
+                metrics.recordError(operation, model, e.getStatusCode());
+                if (!e.isRetryable()) {
+                    // the provider answered, it just did not like the request
+                    limiter.onIgnored();
+                    breaker.onSuccess();
+                    throw e;
+                }
+                limiter.onDropped();
+                breaker.onFailure();
+                if (attempt >= maxAttempts) {
+                    throw new LlmUnavailableException("AI unavailable after " + attempt + " attempts: " + e.getMessage(),
+                            Math.max(e.getRetryAfterMs(), breaker.retryAfterMs()));
+                }
+                sleep(backoffMs(attempt, e.getRetryAfterMs()));
+            }
+        }
+    }
+
+    private LlmResponse execute(String operation, String model, Request httpRequest) {
+        long hedgeDelayMs = hedging.hedgeDelayMs(operation);
+        if (hedgeDelayMs >= 0) return executeHedged(operation, model, httpRequest, hedgeDelayMs);
+
+        long start = System.nanoTime();
+        LlmResponse response = execute(httpRequest);
+        hedging.record(operation, elapsedMs(start));
+        return response;
+    }
+
+    private LlmResponse execute(Request httpRequest) {
+        try (Response response = client.newCall(httpRequest).execute()) {
+            return readResponse(response);
+        } catch (IOException e) {
+            throw new LlmException("AI request failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends the request asynchronously; if it has not answered after hedgeDelayMs, the
+     * breaker is closed, the limiter has a free slot and the hedge budget allows, sends
+     * it a second time. The first successful response wins; an error only counts once
+     * both calls have failed. A losing hedge is cancelled, but a losing primary is left
+     * to finish: its latency, not the winner's, feeds the hedge delay, and the hedge's
+     * limiter slot is held until both calls are over.
+     */
+    private LlmResponse executeHedged(String operation, String model, Request httpRequest, long hedgeDelayMs) {
+        CompletableFuture<Outcome> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        long start = System.nanoTime();
+        CompletableFuture<Void> primaryDone = new CompletableFuture<>();
+        Call primary = enqueue(httpRequest, false, winner, pending, ok -> {
+            if (ok) hedging.record(operation, elapsedMs(start));
+            primaryDone.complete(null);
+        });
+        Call hedge = null;
+        Outcome outcome = null;
+        try {
+            try {
+                outcome = winner.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException slow) {
+                // never while the breaker probes, and never past the concurrency limit
+                if (breaker.getState() != LlmCircuitBreaker.State.CLOSED || !limiter.tryAcquire()) {
+                    outcome = winner.get();
+                } else if (!hedging.tryAcquireHedge()) {
+                    limiter.onIgnored();
+                    outcome = winner.get();
+                } else {
+                    pending.incrementAndGet();
+                    CompletableFuture<Void> hedgeDone = new CompletableFuture<>();
+                    hedge = enqueue(httpRequest, true, winner, pending, ok -> hedgeDone.complete(null));
+                    CompletableFuture.allOf(primaryDone, hedgeDone).whenComplete((v, e) -> limiter.onIgnored());
+                    outcome = winner.get();
+                    metrics.recordHedge(operation, model, outcome.hedge());
+                }
+            }
+            return outcome.response();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LlmException llm) throw llm;
+            throw new LlmException("AI request failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmUnavailableException("Interrupted while waiting for AI", -1);
+        } finally {
+            if (outcome == null || !outcome.hedge()) primary.cancel();
+            if (hedge != null) hedge.cancel();
+        }
+    }
+
+    /** A winning response and whether the hedge sent it. */
+    private record Outcome(LlmResponse response, boolean hedge) {}
+
+    // completes winner with the first success; fails it when the last pending call fails.
+    // done gets whether this call succeeded, once it is over (cancelled calls included)
+    private Call enqueue(Request httpRequest, boolean isHedge, CompletableFuture<Outcome> winner,
+                         AtomicInteger pending, Consumer<Boolean> done) {
+        Call call = client.newCall(httpRequest);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                failed(new LlmException("AI request failed: " + e.getMessage(), e));
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                try (response) {
+                    winner.complete(new Outcome(readResponse(response), isHedge));
+                    done.accept(true);
+                } catch (IOException e) {
+                    failed(new LlmException("AI request failed: " + e.getMessage(), e));
+                } catch (LlmException e) {
+                    failed(e);
+                }
+            }
+
+            private void failed(LlmException e) {
+                if (pending.decrementAndGet() == 0) winner.completeExceptionally(e);
+                done.accept(false);
+            }
+        });
+        return call;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private LlmResponse readResponse(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful()) {
+            String detail = body == null ? "" : body.string();
+            throw new LlmException("AI server error " + response.code() + ": " + detail,
+                    response.code(), retryAfterMs(response));
+        }
+        if (body == null) {
+            throw new LlmException("AI returned empty response", response.code());
+        }
+        return objectMapper.readValue(body.byteStream(), LlmResponse.class);
+    }
+
+    // Retry-After from the provider plus a little jitter, else full-jitter exponential backoff
+    private long backoffMs(int attempt, long retryAfterMs) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (retryAfterMs >= 0) {
+            return Math.min(maxDelayMs, retryAfterMs + random.nextLong(baseDelayMs + 1));
+        }
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 16));
+        return random.nextLong(ceiling + 1);
+    }
+
+    // OpenAI sends retry-after-ms; standard Retry-After is seconds or an HTTP date
+    private static long retryAfterMs(Response response) {
+        try {
+            String ms = response.header("retry-after-ms");
+            if (ms != null) return (long) Double.parseDouble(ms);
+
+            String value = response.header("Retry-After");
+            if (value == null) return -1;
+            if (value.chars().allMatch(Character::isDigit)) return Long.parseLong(value) * 1000;
+            ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new LlmUnavailableException("Interrupted while backing off", -1);
+        }
+    }
+
+    /**
+     * Sends the request with stream=true and emits content deltas as they arrive.
+     * The response is read on an OkHttp dispatcher thread, never the caller's;
+     * cancelling the subscription cancels the HTTP call. Like blocking calls, a
+     * stream holds a concurrency-limiter slot (acquired on subscribe) and reports
+     * its outcome to the limiter and the breaker; it is not retried.
+     */
+    public Flux<String> stream(String operation, LlmRequest request) {
+        request.setStream(true);
+        request.setStreamOptions(LlmRequest.StreamOptions.INCLUDE_USAGE);
+        Request httpRequest = buildHttpRequest(request);
+        String model = request.getModel();
+
+        Flux<String> tokens = Flux.create(sink -> {
+            try {
+                limiter.acquire();
+            } catch (LlmUnavailableException e) {
+                sink.error(e);
+                return;
+            }
+            if (!breaker.tryAcquirePermission()) {
+                limiter.onIgnored();
+                sink.error(new LlmUnavailableException("AI temporarily unavailable (circuit open)", breaker.retryAfterMs()));
+                return;
+            }
+            // the limiter slot is released exactly once: success, pushback, or neither
+            AtomicBoolean released = new AtomicBoolean();
+            Consumer<Runnable> release = outcome -> {
+                if (released.compareAndSet(false, true)) outcome.run();
+            };
+            Call call = client.newCall(httpRequest);
+            sink.onDispose(() -> {
+                call.cancel();
+                release.accept(limiter::onIgnored);
             });
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call c, IOException e) {
+                    if (c.isCanceled()) {
+                        breaker.releasePermission();
+                        release.accept(limiter::onIgnored);
+                    } else {
+                        breaker.onFailure();
+                        release.accept(limiter::onDropped);
+                    }
+                    sink.error(new LlmException("AI request failed: " + e.getMessage(), e));
+                }
+
+                @Override
+                public void onResponse(Call c, Response response) {
+                    try (response) {
+                        ResponseBody body = response.body();
+                        if (!response.isSuccessful() || body == null) {
+                            String detail = body == null ? "" : body.string();
+                            LlmException error = new LlmException("AI server error " + response.code() + ": " + detail,
+                                    response.code(), retryAfterMs(response));
+                            if (error.isRetryable()) {
+                                breaker.onFailure();
+                                release.accept(limiter::onDropped);
+                            } else {
+                                breaker.onSuccess();
+                                release.accept(limiter::onIgnored);
+                            }
+                            sink.error(error);
+                            return;
+                        }
+                        breaker.onSuccess();
+                        readEvents(body.source(), sink, operation, model);
+                        release.accept(limiter::onSuccess);
+                        sink.complete();
+                    } catch (IOException e) {
+                        release.accept(sink.isCancelled() ? limiter::onIgnored : limiter::onDropped);
+                        sink.error(new LlmException("AI stream interrupted: " + e.getMessage(), e));
+                    }
+                }
+            });
+        });
+
+        // time the whole stream, first byte to last token
+        return Flux.defer(() -> {
+            Timer.Sample sample = metrics.start();
+            return tokens
+                    .doOnComplete(() -> metrics.recordSuccess(sample, operation, model, null))
+                    .doOnError(LlmException.class, e -> {
+                        metrics.recordError(operation, model, e.getStatusCode());
+                        metrics.recordFailure(sample, operation, model, e);
+                    });
+        });
+    }
+
+    // parses "data: {...}" lines of the OpenAI event stream until [DONE]
+    private void readEvents(BufferedSource source, FluxSink<String> sink, String operation, String model) throws IOException {
+        String line;
+        while (!sink.isCancelled() && (line = source.readUtf8Line()) != null) {
+            if (!line.startsWith("data:")) continue;
+            String data = line.substring(5).trim();
+            if (data.equals("[DONE]")) return;
 
-            Request req = new Request.Builder()
-                    .url("https://api.openai.com/v1/chat/completions")
-                    .addHeader("Authorization", "Bearer " + apiKey)
-                    .post(RequestBody.create(
-                            body.toString(),
-                            MediaType.parse("application/json")
-                    ))
-                    .build();
-
-            Response res = client.newCall(req).execute();
-            String resp = res.body().string();
-
-            JSONObject json = new JSONObject(resp);
-            return json.getJSONArray("choices")
-                       .getJSONObject(0)
-                       .getJSONObject("message")
-                       .getString("content");
-
-        } catch (Exception e) {
+            JsonNode event = objectMapper.readTree(data);
+            JsonNode delta = event.path("choices").path(0).path("delta").path("content");
+            if (delta.isTextual() && !delta.asText().isEmpty()) {
+                sink.next(delta.asText());
+            }
+            // with include_usage the last event carries the token counts
+            JsonNode usage = event.get("usage");
+            if (usage != null && usage.isObject()) {
+                metrics.recordUsage(operation, model, objectMapper.treeToValue(usage, LlmResponse.Usage.class));
+            }
+        }
+    }
+
+    // serialized once, straight to bytes; retries and hedges resend the same array
+    private Request buildHttpRequest(LlmRequest request) {
+        if (request.getModel() == null) request.setModel(defaultModel);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(request);
+        } catch (IOException e) {
+            throw new LlmException("Could not serialize LLM request: " + e.getMessage(), e);
+        }
+        return new Request.Builder()
+                .url(baseUrl + "/v1/chat/completions")
+                .header("Authorization", "Bearer " + getApiKey())
+                .post(RequestBody.create(body, JSON))
+                .build();
+    }
+
+    /** Convenience: single user message with the default model. */
+    public String simpleChat(String message) {
+        try {
+            String content = complete("simpleChat", LlmRequest.of(defaultModel, null, message, null)).getContent();
+            return content == null ? "AI returned empty content" : content;
+        } catch (LlmException e) {
             return "Error contacting AI service: " + e.getMessage();
         }
     }
@@ -0,0 +1,185 @@
+package com.aidoctor.service;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetGraphicsStateParameters;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.util.Matrix;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-OCR stage for PDFs. Lab-generated PDFs carry a text layer that PDFBox
+ * reads locally in milliseconds; only pages without a usable layer (scans,
+ * fonts without a Unicode mapping) need Textract. A page whose text layer is
+ * sparse but which is mostly covered by an image (a scan under a digital header,
+ * footer or stamp) is OCR'd as well, so the scanned body is not lost. Pages are stripped one at a
+ * time and the document is parsed with a bounded main-memory buffer, so large
+ * PDFs spill to temp files instead of the heap.
+ */
+@Component
+public class PdfTextExtractor {
+
+    // fewer visible characters than this and the page is treated as scanned
+    @Value("${ocr.pdf.min-chars-per-page:40}")
+    private int minCharsPerPage;
+
+    // share of unreadable glyphs (U+FFFD, controls, private use) that marks a broken text layer
+    @Value("${ocr.pdf.max-garbage-ratio:0.05}")
+    private double maxGarbageRatio;
+
+    // a page with fewer visible characters than this whose images cover at least
+    // scan-min-coverage of it is a scan with some digital text on top: OCR it
+    @Value("${ocr.pdf.scan-max-chars:400}")
+    private int scanMaxChars;
+
+    @Value("${ocr.pdf.scan-min-coverage:0.5}")
+    private double scanMinCoverage;
+
+    @Value("${ocr.pdf.render-dpi:200}")
+    private float renderDpi;
+
+    @Value("${ocr.pdf.max-main-memory-bytes:16777216}")
+    private long maxMainMemoryBytes;
+
+    /**
+     * Text layer of every page, in page order. An entry is null when the page
+     * needs OCR, and "" for a blank page (no text, no images).
+     * Returns null when the file is not a readable PDF.
+     */
+    public List<String> textLayer(Path pdf) {
+        try (PDDocument document = load(pdf)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            List<String> pages = new ArrayList<>(document.getNumberOfPages());
+            for (int page = 1; page <= document.getNumberOfPages(); page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String text = stripper.getText(document).strip();
+                PDPage pdPage = document.getPage(page - 1);
+                if (usable(text) && !scannedUnder(pdPage, text)) {
+                    pages.add(text);
+                } else {
+                    pages.add(hasImages(pdPage) ? null : text);
+                }
+            }
+            return pages;
+        } catch (IOException e) {
+            return null; // encrypted or damaged: let Textract try the original
+        }
+    }
+
+    /** Renders the given 1-based pages as grayscale PNGs for OCR, keyed by page number. */
+    public Map<Integer, byte[]> render(Path pdf, List<Integer> pages) throws IOException {
+        Map<Integer, byte[]> images = new LinkedHashMap<>();
+        try (PDDocument document = load(pdf)) {
+            PDFRenderer renderer = new PDFRenderer(document);
+            for (int page : pages) {
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                ImageIO.write(renderer.renderImageWithDPI(page - 1, renderDpi, ImageType.GRAY), "png", png);
+                images.put(page, png.toByteArray());
+            }
+        }
+        return images;
+    }
+
+    // reads the file with random access instead of loading it onto the heap
+    private PDDocument load(Path pdf) throws IOException {
+        return PDDocument.load(pdf.toFile(), MemoryUsageSetting.setupMixed(maxMainMemoryBytes));
+    }
+
+    private boolean usable(String text) {
+        int visible = 0;
+        int garbage = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch)) continue;
+            visible++;
+            if (ch == '\uFFFD' || Character.isISOControl(ch) || Character.getType(ch) == Character.PRIVATE_USE) {
+                garbage++;
+            }
+        }
+        return visible >= minCharsPerPage && garbage <= visible * maxGarbageRatio;
+    }
+
+    // sparse text over a page-sized image: the text is a header/footer/stamp on a scan
+    private boolean scannedUnder(PDPage page, String text) {
+        if (!hasImages(page)) return false;
+        long visible = text.chars().filter(ch -> !Character.isWhitespace(ch)).count();
+        if (visible >= scanMaxChars) return false;
+        try {
+            return ImageCoverage.of(page) >= scanMinCoverage;
+        } catch (IOException e) {
+            return true; // can't tell how much the images cover; OCR rather than lose a scan
+        }
+    }
+
+    // any image or form XObject may carry a scan, so both count
+    private static boolean hasImages(PDPage page) {
+        PDResources resources = page.getResources();
+        return resources != null && resources.getXObjectNames().iterator().hasNext();
+    }
+
+    /** Share of the page area (0..1) covered by drawn images, forms followed. */
+    private static final class ImageCoverage extends PDFStreamEngine {
+
+        private double imageArea;
+
+        private ImageCoverage() {
+            addOperator(new Concatenate());
+            addOperator(new SetGraphicsStateParameters());
+            addOperator(new Save());
+            addOperator(new Restore());
+            addOperator(new SetMatrix());
+        }
+
+        static double of(PDPage page) throws IOException {
+            PDRectangle box = page.getCropBox();
+            double pageArea = (double) box.getWidth() * box.getHeight();
+            if (pageArea <= 0) return 0;
+            ImageCoverage coverage = new ImageCoverage();
+            coverage.processPage(page);
+            return Math.min(1.0, coverage.imageArea / pageArea);
+        }
+
+        @Override
+        protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+            if (!"Do".equals(operator.getName()) || operands.isEmpty() || !(operands.get(0) instanceof COSName name)) {
+                super.processOperator(operator, operands);
+                return;
+            }
+            PDXObject xobject = getResources().getXObject(name);
+            if (xobject instanceof PDImageXObject) {
+                // an image is drawn into the unit square, scaled by the current matrix
+                Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+                imageArea += Math.abs((double) ctm.getScalingFactorX() * ctm.getScalingFactorY());
+            } else if (xobject instanceof PDFormXObject form) {
+                showForm(form);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.aidoctor.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A prompt with {{name}} holes, parsed once at startup. {@link #render}
+ * fills the holes as plain text into a presized builder. Request payloads
+ * are not templated: OpenAiClient serializes the typed LlmRequest.
+ *
+ * Values are passed positionally, in the order of {@link #names()}.
+ */
+public final class PromptTemplate {
+
+    private final String[] literals;   // literals.length == holes.length + 1
+    private final int[] holes;         // index into names for each hole
+    private final List<String> names;
+    private final int literalLength;
+
+    private PromptTemplate(String[] literals, int[] holes, List<String> names) {
+        this.literals = literals;
+        this.holes = holes;
+        this.names = names;
+        int length = 0;
+        for (String l : literals) length += l.length();
+        this.literalLength = length;
+    }
+
+    public static PromptTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> holes = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        int pos = 0;
+        while (true) {
+            int open = template.indexOf("{{", pos);
+            int close = open < 0 ? -1 : template.indexOf("}}", open + 2);
+            if (open < 0 || close < 0) {
+                literals.add(template.substring(pos));
+                break;
+            }
+            literals.add(template.substring(pos, open));
+            String name = template.substring(open + 2, close).strip();
+            int index = names.indexOf(name);
+            if (index < 0) {
+                names.add(name);
+                index = names.size() - 1;
+            }
+            holes.add(index);
+            pos = close + 2;
+        }
+
+        return new PromptTemplate(literals.toArray(new String[0]),
+                holes.stream().mapToInt(Integer::intValue).toArray(), List.copyOf(names));
+    }
+
+    /** Placeholder names, in the order values must be passed. */
+    public List<String> names() {
+        return names;
+    }
+
+    /** Plain-text rendering (no escaping). */
+    public String render(String... values) {
+        checkArity(values);
+        int length = literalLength;
+        for (int hole : holes) length += values[hole] == null ? 0 : values[hole].length();
+
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < holes.length; i++) {
+            sb.append(literals[i]);
+            if (values[holes[i]] != null) sb.append(values[holes[i]]);
+        }
+        return sb.append(literals[holes.length]).toString();
+    }
+
+    private void checkArity(String[] values) {
+        if (values.length != names.size()) {
+            throw new IllegalArgumentException("Template expects " + names + " but got " + values.length + " values");
+        }
+    }
+}
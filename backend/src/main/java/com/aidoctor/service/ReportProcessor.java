@@ -1,17 +1,23 @@
 package com.aidoctor.service;
 
+import com.aidoctor.model.AiReport;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 @Service
 public class ReportProcessor {
 
     private final AiService aiService;
+    private final ExecutorService llmExecutor;
 
-    public ReportProcessor(AiService aiService) {
+    public ReportProcessor(AiService aiService, ExecutorService llmExecutor) {
         this.aiService = aiService;
+        this.llmExecutor = llmExecutor;
     }
 
     public Map<String, Object> process(String text) {
@@ -22,18 +28,49 @@ public class ReportProcessor {
             return Map.of("error", "OCR produced no text.");
         }
 
-        // 1. Classify document type
-        String docType = aiService.classifyDocumentWithAi(text);
-
-        // 2. AI interpretation (summary, findings, recommendations)
-        String aiJson = aiService.summarizeAndInterpret(text, Map.of());
+        // 1. One structured call: docType + interpretation + summary together
+        AiReport structured = parseStructured(aiService.analyzeReport(text));
+        if (structured != null) {
+            result.put("docType", structured.getDocType());
+            result.put("aiInterpretation", structured.getInterpretation());
+            result.put("summary", structured.getSummary());
+            return result;
+        }
 
-        result.put("docType", docType);
-        result.put("aiInterpretation", aiJson);
+        // 2. Reply was not usable: run the three separate calls concurrently and join
+        CompletableFuture<String> docType =
+                CompletableFuture.supplyAsync(() -> aiService.classifyDocumentWithAi(text), llmExecutor);
+        CompletableFuture<String> aiJson =
+                CompletableFuture.supplyAsync(() -> aiService.summarizeAndInterpret(text, Map.of()), llmExecutor);
+        CompletableFuture<String> summary =
+                CompletableFuture.supplyAsync(() -> aiService.simpleChat("Summarize briefly:\n" + text), llmExecutor);
 
-        // Try extracting a summary
-        result.put("summary", aiService.simpleChat("Summarize briefly:\n" + text));
+        try {
+            result.put("docType", docType.join());
+            result.put("aiInterpretation", aiJson.join());
+            result.put("summary", summary.join());
+        } catch (CompletionException ce) {
+            docType.cancel(true);
+            aiJson.cancel(true);
+            summary.cancel(true);
+            if (ce.getCause() instanceof RuntimeException re) throw re;
+            throw ce;
+        }
 
         return result;
     }
+
+    // null unless the reply is a JSON object carrying all three keys
+    private AiReport parseStructured(String reply) {
+        if (reply == null) return null;
+        try {
+            AiReport report = AiReplyParser.parse(reply);
+            if (report.getDocType() != null && report.getInterpretation() != null && report.getSummary() != null) {
+                return report;
+            }
+        } catch (IllegalArgumentException ignored) {
+            // fall through to the separate calls
+        }
+        return null;
+    }
 }
@@ -1,16 +1,30 @@
 package com.aidoctor.service;
 
+import com.aidoctor.model.AiReport;
+import com.aidoctor.model.OcrDocument;
+import com.aidoctor.model.TestResult;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 /**
  * ReportService:
  *  - receives filename + extracted text
- *  - runs a quick medical / non-medical classifier (keywords)
+ *  - runs a quick local medical / non-medical classifier (naive Bayes);
+ *    the AI is asked only when the local confidence is below report.classifier.min-confidence
+ *    (or before any rejection, if report.classifier.trust-non-medical is off)
  *  - if non-medical -> returns rejection with reason
  *  - if medical -> calls OpenAIService to summarize + produce a verification table
+ *  - long documents are summarized map-reduce style: chunks in parallel, then one merge call
+ *  - a lab report whose OCR tables yield report.tables.min-tests tests (LabTableReader),
+ *    under a unit or reference range column and mostly naming known analytes, is
+ *    reported from those rows alone, with no classification and no AI call
  *
  * Returned map format:
  *  {
@@ -19,35 +33,65 @@ import java.util.*;
  *    "isMedical": true/false,
  *    "reason": "...",              // present when isMedical==false
  *    "aiReply": "...",             // present when isMedical==true
- *    "summary": "..."              // short summary (first lines) if AI present
+ *    "summary": "...",             // AI summary field, else first lines of aiReply
+ *    "report": {...}               // typed AiReport when the reply was valid JSON
  *  }
  */
 @Service
 public class ReportService {
 
     private final OpenAIService openAIService;
+    private final DocumentClassifier classifier;
+    private final ExecutorService llmExecutor;
 
-    public ReportService(OpenAIService openAIService) {
+    // below this local confidence the AI decides MEDICAL / NON_MEDICAL
+    @Value("${report.classifier.min-confidence:0.9}")
+    private double classifierMinConfidence;
+
+    // off: a confident local NON_MEDICAL verdict is still rechecked by the AI before rejecting
+    @Value("${report.classifier.trust-non-medical:true}")
+    private boolean trustLocalNonMedical;
+
+    // texts longer than this go through the chunked map-reduce path
+    @Value("${report.chunk.threshold-chars:12000}")
+    private int chunkThresholdChars;
+
+    @Value("${report.chunk.max-chars:6000}")
+    private int chunkMaxChars;
+
+    // max chunk summaries in flight per document
+    @Value("${report.chunk.parallelism:4}")
+    private int chunkParallelism;
+
+    // lab tables with at least this many rows are reported without the AI; 0 disables
+    @Value("${report.tables.min-tests:3}")
+    private int tableMinTests;
+
+    public ReportService(OpenAIService openAIService, DocumentClassifier classifier, ExecutorService llmExecutor) {
         this.openAIService = openAIService;
+        this.classifier = classifier;
+        this.llmExecutor = llmExecutor;
     }
 
-    // crude medical keywords — simple heuristic, extend as needed
-    private static final String[] MEDICAL_KEYWORDS = new String[]{
-            "hemoglobin", "rbc", "wbc", "platelet", "cbc", "creatinine", "urea",
-            "alt", "ast", "lft", "kft", "lipid", "cholesterol", "hdl", "ldl",
-            "triglyceride", "blood sugar", "glucose", "hba1c", "prescription",
-            "mg/dl", "g/dl", "report", "radiology", "x-ray", "ultrasound", "ct scan", "mri"
-    };
-
-    private boolean looksMedical(String text) {
-        if (text == null) return false;
-        String lower = text.toLowerCase();
-        int matches = 0;
-        for (String k : MEDICAL_KEYWORDS) {
-            if (lower.contains(k)) matches++;
+    /** False while the LLM circuit is open; controllers check this before paying for OCR. */
+    public boolean isAiAvailable() {
+        return openAIService.isAvailable();
+    }
+
+    /**
+     * Like processAndInterpret(filename, text), but a lab report whose tables were
+     * read by OCR is answered from the tables directly. The table is its own
+     * evidence: a unit or reference range column and rows naming known analytes
+     * (LabTableReader.isLabPanel); names and values alone (an invoice) do not qualify.
+     */
+    public Map<String, Object> processAndInterpret(String filename, OcrDocument document) {
+        if (tableMinTests > 0) {
+            List<TestResult> tests = LabTableReader.read(document);
+            if (tests.size() >= tableMinTests && LabTableReader.isLabPanel(tests)) {
+                return tableReport(filename, document, tests);
+            }
         }
-        // require at least one keyword; but if length short, be stricter
-        return matches >= 1;
+        return processAndInterpret(filename, OcrService.plainText(document));
     }
 
     /**
@@ -60,30 +104,31 @@ public class ReportService {
         out.put("text", extractedText == null ? "" : extractedText);
 
         // 1) Quick local medical check
-        boolean isMedical = looksMedical(extractedText);
+        DocumentClassifier.Result local = classifier.classify(extractedText);
+        boolean isMedical = local.medical();
+        String reason = String.format("Local classifier: %s (confidence %.2f).",
+                isMedical ? "medical" : "non-medical", local.confidence());
 
-        // If local heuristic fails, we can ask the AI to classify; but avoid calling AI for every file unnecessarily.
-        if (!isMedical) {
+        // Only when the local model is unsure, or would reject, do we pay for an AI classification.
+        if (local.confidence() < classifierMinConfidence || (!isMedical && !trustLocalNonMedical)) {
             // Ask AI to check whether the text looks medical (short prompt)
             String system = "You are an assistant that classifies whether a document is a medical document (lab report, prescription, diagnostic report). Respond with: MEDICAL or NON_MEDICAL followed by a short reason.";
             String userPrompt = "Classify this extracted text (return MEDICAL or NON_MEDICAL and one-line reason):\n\n" + (extractedText == null ? "" : extractedText.substring(0, Math.min(1500, extractedText.length())));
-            String aiClassify = openAIService.askOpenAI(system, userPrompt);
-
-            // Simple parse: if aiClassify contains MEDICAL
-            if (aiClassify != null && aiClassify.toUpperCase().contains("MEDICAL")) {
-                isMedical = true;
-            } else {
-                // treat as non-medical; set reason to AI response (or local message)
-                String reason = "Local heuristic: no medical keywords found.";
-                if (aiClassify != null && !aiClassify.isBlank()) {
-                    reason = "AI: " + aiClassify;
-                }
-                out.put("isMedical", false);
-                out.put("reason", reason);
-                return out;
+            String aiClassify = openAIService.askOpenAI("classifyMedical", system, userPrompt);
+
+            // the reply starts with the verdict; "NON_MEDICAL" also contains "MEDICAL", so check the prefix
+            if (aiClassify != null && !aiClassify.isBlank()) {
+                isMedical = aiClassify.strip().toUpperCase().startsWith("MEDICAL");
+                reason = "AI: " + aiClassify;
             }
         }
 
+        if (!isMedical) {
+            out.put("isMedical", false);
+            out.put("reason", reason);
+            return out;
+        }
+
         // 2) If medical -> compose prompt and call OpenAI to summarize & produce verification table
         out.put("isMedical", true);
 
@@ -93,37 +138,115 @@ public class ReportService {
                 "Return a JSON object with keys: summary, docType, patientName, tests (map testName->value), notes.\n" +
                 "If you are unsure about any field put null or an empty map.";
 
-        String userPrompt = "Extracted Text:\n" + (extractedText == null ? "" : extractedText);
-
-        String aiReply = openAIService.askOpenAI(systemPrompt, userPrompt);
+        String aiReply;
+        if (extractedText != null && extractedText.length() > chunkThresholdChars) {
+            aiReply = mapReduce(systemPrompt, extractedText);
+        } else {
+            String userPrompt = "Extracted Text:\n" + (extractedText == null ? "" : extractedText);
+            aiReply = openAIService.askOpenAI("processAndInterpret", systemPrompt, userPrompt);
+        }
 
         // Return AI reply and also an easy summary string
         out.put("aiReply", aiReply == null ? "AI returned no reply" : aiReply);
 
         // produce short 'summary' field: use first 300 chars of aiReply or AI-provided summary key if present
-        String summary = extractSummaryFromAiReply(aiReply);
-        out.put("summary", summary);
+        AiReport report = parseAiReply(aiReply);
+        if (report != null) out.put("report", report);
+        out.put("summary", summaryOf(report, aiReply));
 
         return out;
     }
 
-    // naive extractor to pick summary key from AI JSON reply if present, else fallback
-    private String extractSummaryFromAiReply(String aiReply) {
-        if (aiReply == null) return "No summary available.";
-        String lower = aiReply.toLowerCase();
-        // look for "summary" token
-        int idx = lower.indexOf("\"summary\"");
-        if (idx >= 0) {
-            int colon = aiReply.indexOf(":", idx);
-            if (colon > 0) {
-                int start = aiReply.indexOf('"', colon);
-                if (start > 0) {
-                    int end = aiReply.indexOf('"', start + 1);
-                    if (end > start) return aiReply.substring(start + 1, end);
-                }
+    /**
+     * Map: summarize each chunk in parallel (at most chunkParallelism at once).
+     * Reduce: one call that merges the partial notes into the final JSON reply.
+     */
+    private String mapReduce(String reduceSystemPrompt, String text) {
+        List<String> chunks = TextChunker.split(text, chunkMaxChars);
+
+        String mapSystem = "You are a medical data assistant reading one part of a longer medical document. " +
+                "List the patient name, document type, every test with value, unit and reference range, and any notable findings in this part. " +
+                "Be concise; do not guess values that are not in the text.";
+
+        Semaphore permits = new Semaphore(chunkParallelism);
+        List<CompletableFuture<String>> partials = new ArrayList<>(chunks.size());
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                String prompt = "Part " + (i + 1) + " of " + chunks.size() + ":\n" + chunks.get(i);
+                permits.acquire();
+                partials.add(CompletableFuture
+                        .supplyAsync(() -> openAIService.askOpenAI("processAndInterpret.map", mapSystem, prompt), llmExecutor)
+                        .whenComplete((r, ex) -> permits.release()));
             }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            partials.forEach(f -> f.cancel(true));
+            return "AI request interrupted";
         }
-        // If AI returned plain text, take first 300 chars
+
+        StringBuilder merged = new StringBuilder();
+        try {
+            for (int i = 0; i < partials.size(); i++) {
+                merged.append("--- Part ").append(i + 1).append(" ---\n").append(partials.get(i).join()).append("\n\n");
+            }
+        } catch (CompletionException ce) {
+            // one failed part fails the report; don't keep paying for the rest
+            partials.forEach(f -> f.cancel(true));
+            if (ce.getCause() instanceof RuntimeException re) throw re;
+            throw ce;
+        }
+
+        String reducePrompt = "The document was too long to read at once; below are notes from each part, in order. " +
+                "Merge them into one answer for the whole document.\n\n" + merged;
+        return openAIService.askOpenAI("processAndInterpret.reduce", reduceSystemPrompt, reducePrompt);
+    }
+
+    // same response shape as the AI path, with the report built from the table rows
+    private Map<String, Object> tableReport(String filename, OcrDocument document, List<TestResult> tests) {
+        AiReport report = new AiReport();
+        report.setDocType("lab report");
+        report.setPatientName(LabTableReader.patientName(document));
+        report.setTests(tests);
+
+        List<String> flagged = new ArrayList<>();
+        for (TestResult test : tests) {
+            if ("low".equals(test.getInterpretation()) || "high".equals(test.getInterpretation())) {
+                // rawValue carries the unit unless the table had a unit column
+                String unit = test.getUnit() == null || test.getRawValue().endsWith(test.getUnit()) ? "" : " " + test.getUnit();
+                flagged.add(test.getName() + " " + test.getRawValue() + unit + " (" + test.getInterpretation() + ")");
+            }
+        }
+        String summary = "Lab report with " + tests.size() + " tests. " + (flagged.isEmpty()
+                ? "All results with a reference range are within it."
+                : "Outside the reference range: " + String.join(", ", flagged) + ".");
+        report.setSummary(summary);
+
+        Map<String, Object> out = new HashMap<>();
+        out.put("fileName", filename == null ? "unknown" : filename);
+        out.put("text", OcrService.plainText(document));
+        out.put("isMedical", true);
+        out.put("aiReply", summary);
+        out.put("summary", summary);
+        out.put("report", report);
+        return out;
+    }
+
+    // typed view of the AI reply, or null when the model did not return the requested JSON
+    private AiReport parseAiReply(String aiReply) {
+        if (aiReply == null) return null;
+        try {
+            return AiReplyParser.parse(aiReply);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // AI-provided summary when present, else the first 300 chars of the reply
+    private String summaryOf(AiReport report, String aiReply) {
+        if (report != null && report.getSummary() != null && !report.getSummary().isBlank()) {
+            return report.getSummary();
+        }
+        if (aiReply == null) return "No summary available.";
         String trimmed = aiReply.trim();
         if (trimmed.isBlank()) return "No summary available.";
         return trimmed.length() > 300 ? trimmed.substring(0, 300) + "..." : trimmed;
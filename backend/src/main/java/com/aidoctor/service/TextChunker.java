@@ -0,0 +1,64 @@
+package com.aidoctor.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Splits long OCR text into chunks of at most maxChars, preferring page
+ * breaks, then blank-line section breaks, then line breaks.
+ */
+public final class TextChunker {
+
+    // form feed, "Page 3" / "Page 3 of 7" headers, or a blank line
+    private static final Pattern BOUNDARY = Pattern.compile(
+            "(?im)\\f|^(?=\\s*page\\s+\\d+(\\s+of\\s+\\d+)?\\s*$)|\\n\\s*\\n");
+
+    private TextChunker() {}
+
+    public static List<String> split(String text, int maxChars) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isBlank()) return chunks;
+
+        StringBuilder current = new StringBuilder();
+        for (String segment : BOUNDARY.split(text)) {
+            if (segment.isBlank()) continue;
+
+            if (segment.length() > maxChars) {
+                flush(current, chunks);
+                splitOnLines(segment, maxChars, chunks);
+                continue;
+            }
+            if (current.length() + segment.length() + 2 > maxChars) {
+                flush(current, chunks);
+            }
+            if (current.length() > 0) current.append("\n\n");
+            current.append(segment.strip());
+        }
+        flush(current, chunks);
+        return chunks;
+    }
+
+    private static void splitOnLines(String segment, int maxChars, List<String> chunks) {
+        StringBuilder current = new StringBuilder();
+        for (String line : segment.split("\n")) {
+            // a single overlong line is cut hard
+            while (line.length() > maxChars) {
+                flush(current, chunks);
+                chunks.add(line.substring(0, maxChars));
+                line = line.substring(maxChars);
+            }
+            if (current.length() + line.length() + 1 > maxChars) {
+                flush(current, chunks);
+            }
+            if (current.length() > 0) current.append('\n');
+            current.append(line);
+        }
+        flush(current, chunks);
+    }
+
+    private static void flush(StringBuilder current, List<String> chunks) {
+        if (!current.toString().isBlank()) chunks.add(current.toString().strip());
+        current.setLength(0);
+    }
+}
@@ -0,0 +1,151 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.OcrDocument;
+import software.amazon.awssdk.services.textract.model.Block;
+import software.amazon.awssdk.services.textract.model.BlockType;
+import software.amazon.awssdk.services.textract.model.BoundingBox;
+import software.amazon.awssdk.services.textract.model.EntityType;
+import software.amazon.awssdk.services.textract.model.Relationship;
+import software.amazon.awssdk.services.textract.model.RelationshipType;
+import software.amazon.awssdk.services.textract.model.SelectionStatus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Turns Textract blocks into OcrDocument pages: LINE blocks with their WORD
+ * children, TABLE blocks with their CELL children as a row/column grid, and
+ * KEY_VALUE_SET pairs (AnalyzeDocument FORMS) as form fields.
+ * Blocks are placed by their Page number, so results that arrive in any
+ * pagination order still come out page by page, in reading order within a page.
+ */
+public final class TextractBlocks {
+
+    private static final BoundingBox UNKNOWN = BoundingBox.builder()
+            .left(Float.NaN).top(Float.NaN).width(Float.NaN).height(Float.NaN).build();
+
+    private TextractBlocks() {}
+
+    /** Appends pages 1..pageCount (more if blocks name a later page) to the builder. */
+    public static void appendPages(OcrDocument.Builder builder, List<Block> blocks, int pageCount) {
+        Map<String, Block> byId = new HashMap<>();
+        Map<Integer, List<Block>> byPage = new HashMap<>();
+        int lastPage = Math.max(pageCount, 1);
+        for (Block block : blocks) {
+            byId.put(block.id(), block);
+            if (block.blockType() == BlockType.LINE || block.blockType() == BlockType.TABLE || isKey(block)) {
+                int page = block.page() == null ? 1 : block.page();
+                byPage.computeIfAbsent(page, p -> new ArrayList<>()).add(block);
+                lastPage = Math.max(lastPage, page);
+            }
+        }
+
+        for (int page = 1; page <= lastPage; page++) {
+            builder.startPage();
+            for (Block block : byPage.getOrDefault(page, List.of())) {
+                if (block.blockType() == BlockType.LINE) {
+                    appendLine(builder, block, byId);
+                } else if (block.blockType() == BlockType.TABLE) {
+                    appendTable(builder, block, byId);
+                } else {
+                    appendField(builder, block, byId);
+                }
+            }
+        }
+    }
+
+    private static void appendLine(OcrDocument.Builder builder, Block line, Map<String, Block> byId) {
+        if (line.text() == null) return;
+        BoundingBox box = box(line);
+        builder.addLine(line.text(), confidence(line), box.left(), box.top(), box.width(), box.height());
+        forEachChild(line, byId, word -> {
+            if (word.blockType() == BlockType.WORD && word.text() != null) {
+                BoundingBox w = box(word);
+                builder.addWord(word.text(), confidence(word), w.left(), w.top(), w.width(), w.height());
+            }
+        });
+    }
+
+    private static void appendTable(OcrDocument.Builder builder, Block table, Map<String, Block> byId) {
+        List<Block> cells = new ArrayList<>();
+        int[] size = new int[2];
+        forEachChild(table, byId, cell -> {
+            if (cell.blockType() != BlockType.CELL || cell.rowIndex() == null || cell.columnIndex() == null) return;
+            cells.add(cell);
+            size[0] = Math.max(size[0], cell.rowIndex() + span(cell.rowSpan()) - 1);
+            size[1] = Math.max(size[1], cell.columnIndex() + span(cell.columnSpan()) - 1);
+        });
+        if (cells.isEmpty()) return;
+
+        builder.addTable(size[0], size[1]);
+        for (Block cell : cells) {
+            builder.setCell(cell.rowIndex() - 1, cell.columnIndex() - 1, childText(cell, byId), confidence(cell));
+        }
+    }
+
+    // a KEY block points at its VALUE block(s); both hold their text as children
+    private static void appendField(OcrDocument.Builder builder, Block key, Map<String, Block> byId) {
+        String name = childText(key, byId);
+        if (name.isEmpty()) return;
+        StringBuilder value = new StringBuilder();
+        forEachRelated(key, RelationshipType.VALUE, byId, v -> {
+            String text = childText(v, byId);
+            if (text.isEmpty()) return;
+            if (value.length() > 0) value.append(' ');
+            value.append(text);
+        });
+        builder.addField(name, value.toString(), confidence(key));
+    }
+
+    // WORD children joined by spaces; a ticked checkbox reads as "X"
+    private static String childText(Block block, Map<String, Block> byId) {
+        StringBuilder text = new StringBuilder();
+        forEachChild(block, byId, child -> {
+            String word = child.blockType() == BlockType.WORD ? child.text()
+                    : child.blockType() == BlockType.SELECTION_ELEMENT
+                      && child.selectionStatus() == SelectionStatus.SELECTED ? "X"
+                    : null;
+            if (word == null) return;
+            if (text.length() > 0) text.append(' ');
+            text.append(word);
+        });
+        return text.toString();
+    }
+
+    private static boolean isKey(Block block) {
+        return block.blockType() == BlockType.KEY_VALUE_SET && block.entityTypes().contains(EntityType.KEY);
+    }
+
+    private static void forEachChild(Block block, Map<String, Block> byId, Consumer<Block> action) {
+        forEachRelated(block, RelationshipType.CHILD, byId, action);
+    }
+
+    private static void forEachRelated(Block block, RelationshipType type, Map<String, Block> byId,
+                                       Consumer<Block> action) {
+        if (!block.hasRelationships()) return;
+        for (Relationship relationship : block.relationships()) {
+            if (relationship.type() != type) continue;
+            for (String id : relationship.ids()) {
+                Block related = byId.get(id);
+                if (related != null) action.accept(related);
+            }
+        }
+    }
+
+    private static BoundingBox box(Block block) {
+        return block.geometry() == null || block.geometry().boundingBox() == null
+                ? UNKNOWN
+                : block.geometry().boundingBox();
+    }
+
+    private static float confidence(Block block) {
+        return block.confidence() == null ? 0f : block.confidence();
+    }
+
+    private static int span(Integer span) {
+        return span == null || span < 1 ? 1 : span;
+    }
+}
@@ -0,0 +1,152 @@
+package com.aidoctor.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+/**
+ * Moves an upload into the spool directory with MultipartFile.transferTo (a
+ * rename when the multipart temp file is on the same filesystem, so the bytes
+ * are written to disk once), then reads it back once through a small direct
+ * buffer to hash it (SHA-256) and sniff the file type. The bytes never sit on
+ * the heap: consumers read the file, or map it read-only. Heap per upload is
+ * the read buffer, whatever the file size.
+ */
+@Component
+public class UploadSpooler {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadSpooler.class);
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int SNIFF_BYTES = 8;
+
+    @Value("${upload.spool.dir:${java.io.tmpdir}/aidoctor-uploads}")
+    private String dir;
+
+    private Path spoolDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        spoolDir = Files.createDirectories(Path.of(dir));
+        // leftovers of a previous run that died mid-request
+        try (Stream<Path> stale = Files.list(spoolDir)) {
+            stale.forEach(f -> {
+                try {
+                    Files.deleteIfExists(f);
+                } catch (IOException e) {
+                    log.debug("Could not delete stale spool file {}: {}", f, e.getMessage());
+                }
+            });
+        }
+    }
+
+    /** Spools the upload; close the result to delete the file. */
+    public SpooledFile spool(MultipartFile file) throws IOException {
+        MessageDigest sha256 = sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        byte[] head = new byte[SNIFF_BYTES];
+        int headLength = 0;
+        long size = 0;
+
+        Path path = Files.createTempFile(spoolDir, "upload-", ".bin");
+        try {
+            // transferTo(File) lets the container move its temp file; transferTo(Path) would copy it
+            file.transferTo(path.toFile());
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (source.read(buffer) >= 0) {
+                    buffer.flip();
+                    if (headLength < SNIFF_BYTES) {
+                        int n = Math.min(SNIFF_BYTES - headLength, buffer.remaining());
+                        buffer.get(buffer.position(), head, headLength, n);
+                        headLength += n;
+                    }
+                    size += buffer.remaining();
+                    sha256.update(buffer);
+                    buffer.clear();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new SpooledFile(path, size, HexFormat.of().formatHex(sha256.digest()), sniff(head, headLength));
+    }
+
+    // magic numbers of the formats Textract reads; anything else is octet-stream
+    private static String sniff(byte[] head, int length) {
+        if (startsWith(head, length, '%', 'P', 'D', 'F', '-')) return "application/pdf";
+        if (startsWith(head, length, 0x89, 'P', 'N', 'G')) return "image/png";
+        if (startsWith(head, length, 0xFF, 0xD8, 0xFF)) return "image/jpeg";
+        if (startsWith(head, length, 'I', 'I', 0x2A, 0x00) || startsWith(head, length, 'M', 'M', 0x00, 0x2A)) {
+            return "image/tiff";
+        }
+        return "application/octet-stream";
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... magic) {
+        if (length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xFF) != magic[i]) return false;
+        }
+        return true;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /** A spooled upload: its file, size, content hash and sniffed media type. */
+    public static final class SpooledFile implements Closeable {
+        private final Path path;
+        private final long size;
+        private final String sha256;
+        private final String mediaType;
+
+        SpooledFile(Path path, long size, String sha256, String mediaType) {
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+            this.mediaType = mediaType;
+        }
+
+        public Path getPath() { return path; }
+        public long getSize() { return size; }
+        public String getSha256() { return sha256; }
+        public String getMediaType() { return mediaType; }
+
+        public boolean isPdf() {
+            return "application/pdf".equals(mediaType);
+        }
+
+        /** Read-only mapping of the file; lives in the page cache, not on the heap. */
+        public ByteBuffer map() throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            Files.deleteIfExists(path);
+        }
+    }
+}
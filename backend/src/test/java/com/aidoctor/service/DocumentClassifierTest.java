@@ -0,0 +1,68 @@
+package com.aidoctor.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the confidence scale on documents the classifier was not trained on:
+ * ordinary reports and ordinary paperwork must clear the default
+ * report.classifier.min-confidence, so neither costs an AI call.
+ */
+class DocumentClassifierTest {
+
+    private static final double MIN_CONFIDENCE = 0.9;
+
+    private static DocumentClassifier classifier;
+
+    @BeforeAll
+    static void train() throws IOException {
+        classifier = new DocumentClassifier();
+        classifier.train();
+    }
+
+    @Test
+    void heldOutMedicalDocumentsAreConfidentlyMedical() throws IOException {
+        for (String document : heldOut("classifier/held_out_medical.txt")) {
+            DocumentClassifier.Result result = classifier.classify(document);
+            assertTrue(result.medical(), document);
+            assertTrue(result.confidence() >= MIN_CONFIDENCE, result + " " + document);
+        }
+    }
+
+    @Test
+    void heldOutNonMedicalDocumentsAreConfidentlyNonMedical() throws IOException {
+        for (String document : heldOut("classifier/held_out_non_medical.txt")) {
+            DocumentClassifier.Result result = classifier.classify(document);
+            assertFalse(result.medical(), document);
+            assertTrue(result.confidence() >= MIN_CONFIDENCE, result + " " + document);
+        }
+    }
+
+    @Test
+    void confidenceGrowsWithEvidence() {
+        DocumentClassifier.Result line = classifier.classify("Patient name");
+        DocumentClassifier.Result report = classifier.classify(
+                "RADIOLOGY REPORT USG WHOLE ABDOMEN Liver is normal in size. Gall bladder is well distended. "
+                        + "Both kidneys normal in size. IMPRESSION: No significant abnormality detected.");
+        assertTrue(line.confidence() < MIN_CONFIDENCE, line.toString());
+        assertTrue(report.medical());
+        assertTrue(report.confidence() > line.confidence(), report + " vs " + line);
+    }
+
+    @Test
+    void strongTermsDecideMedical() {
+        assertEquals(new DocumentClassifier.Result(true, 1.0), classifier.classify("Haemoglobin 9.1 g/dL"));
+    }
+
+    private static List<String> heldOut(String resource) throws IOException {
+        String text = new ClassPathResource(resource).getContentAsString(StandardCharsets.UTF_8);
+        return text.lines().filter(l -> !l.isBlank() && !l.startsWith("#")).toList();
+    }
+}
@@ -0,0 +1,136 @@
+package com.aidoctor.service;
+
+import com.aidoctor.model.AiReport;
+import com.aidoctor.model.OcrDocument;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportServiceTest {
+
+    private static DocumentClassifier classifier;
+
+    @BeforeAll
+    static void train() throws IOException {
+        classifier = new DocumentClassifier();
+        classifier.train();
+    }
+
+    @Test
+    void labReportIsClassifiedWithoutTheAi() {
+        RecordingAi ai = new RecordingAi();
+        Map<String, Object> out = reportService(ai).processAndInterpret("cbc.pdf",
+                "COMPLETE BLOOD COUNT Test Result Unit Biological Ref. Interval Haemoglobin 11.2 g/dL 13.0 - 17.0 "
+                        + "Total Leucocyte Count 9800 cells/cumm 4000 - 11000 Platelet Count 1.9 lakhs/cumm 1.5 - 4.1 "
+                        + "RBC Count 4.1 mill/cumm 4.5 - 5.5");
+
+        assertEquals(true, out.get("isMedical"));
+        assertEquals(List.of("processAndInterpret"), ai.operations);
+    }
+
+    @Test
+    void invoiceIsRejectedWithoutTheAi() {
+        RecordingAi ai = new RecordingAi();
+        Map<String, Object> out = reportService(ai).processAndInterpret("invoice.pdf",
+                "TAX INVOICE Invoice No: INV-2024-0193 Bill To: Sunrise Traders GSTIN 27AAACS1234F1Z5 "
+                        + "Description Qty Rate Amount A4 Copier Paper 20 245.00 4900.00 Taxable Value 5200.00 "
+                        + "CGST 9% 468.00 SGST 9% 468.00 Grand Total 6136.00");
+
+        assertEquals(false, out.get("isMedical"));
+        assertTrue(ai.operations.isEmpty(), ai.operations.toString());
+    }
+
+    @Test
+    void cbcTableIsReportedFromTheTable() {
+        OcrDocument document = table(OcrDocument.builder()
+                        .addLine("CITY DIAGNOSTICS")
+                        .addLine("COMPLETE BLOOD COUNT")
+                        .addField("Patient Name", "Ravi Kumar", 95f),
+                new String[][]{
+                        {"Test", "Result", "Unit", "Biological Ref. Interval"},
+                        {"HAEMATOLOGY", "", "", ""},
+                        {"Haemoglobin", "11.2", "g/dL", "13.0 - 17.0"},
+                        {"Total Leucocyte Count", "9800", "cells/cumm", "4000 - 11000"},
+                        {"Neutrophils", "68", "%", "40 - 80"},
+                        {"Lymphocytes", "25", "%", "20 - 40"},
+                        {"Platelet Count", "1.9", "lakhs/cumm", "1.5 - 4.1"},
+                        {"RBC Count", "4.1", "mill/cumm", "4.5 - 5.5"},
+                        {"PCV", "36", "%", "40 - 50"},
+                        {"MCV", "88", "fL", "83 - 101"}
+                });
+        RecordingAi ai = new RecordingAi();
+
+        Map<String, Object> out = reportService(ai).processAndInterpret("cbc.pdf", document);
+
+        assertTrue(ai.operations.isEmpty(), ai.operations.toString());
+        assertEquals(true, out.get("isMedical"));
+        AiReport report = (AiReport) out.get("report");
+        assertEquals("Ravi Kumar", report.getPatientName());
+        assertEquals(8, report.getTests().size());
+        assertEquals("low", report.getTests().get(0).getInterpretation());
+        assertTrue(report.getSummary().contains("Haemoglobin 11.2 g/dL (low)"), report.getSummary());
+    }
+
+    @Test
+    void invoiceTableIsNotALabReport() {
+        OcrDocument document = table(OcrDocument.builder().addLine("TAX INVOICE"),
+                new String[][]{
+                        {"Description", "Qty", "Unit", "Value"},
+                        {"A4 Copier Paper", "20", "ream", "4900.00"},
+                        {"Stapler Pins", "10", "box", "300.00"},
+                        {"Whiteboard Marker", "12", "pcs", "240.00"}
+                });
+        RecordingAi ai = new RecordingAi();
+
+        Map<String, Object> out = reportService(ai).processAndInterpret("invoice.pdf", document);
+
+        // names, values and a unit column, but no analytes: classified as text instead
+        assertEquals(false, out.get("isMedical"));
+        assertNull(out.get("report"));
+    }
+
+    private static OcrDocument table(OcrDocument.Builder builder, String[][] rows) {
+        builder.addTable(rows.length, rows[0].length);
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < rows[row].length; column++) {
+                builder.setCell(row, column, rows[row][column], 99f);
+            }
+        }
+        return builder.build();
+    }
+
+    // ReportService with the application.properties defaults and the given AI
+    private static ReportService reportService(OpenAIService ai) {
+        ReportService service = new ReportService(ai, classifier, Executors.newVirtualThreadPerTaskExecutor());
+        ReflectionTestUtils.setField(service, "classifierMinConfidence", 0.9);
+        ReflectionTestUtils.setField(service, "trustLocalNonMedical", true);
+        ReflectionTestUtils.setField(service, "chunkThresholdChars", 12000);
+        ReflectionTestUtils.setField(service, "chunkMaxChars", 6000);
+        ReflectionTestUtils.setField(service, "chunkParallelism", 4);
+        ReflectionTestUtils.setField(service, "tableMinTests", 3);
+        return service;
+    }
+
+    /** Records the operation of every AI call and answers with a minimal report. */
+    private static class RecordingAi extends OpenAIService {
+        final List<String> operations = new ArrayList<>();
+
+        RecordingAi() {
+            super(null, null, null);
+        }
+
+        @Override
+        public String askOpenAI(String operation, String systemPrompt, String userPrompt) {
+            operations.add(operation);
+            return "{\"summary\": \"ok\", \"docType\": \"lab report\"}";
+        }
+    }
+}
@@ -22,6 +22,8 @@ export default function App() {
   const [chatInput, setChatInput] = useState("");
   const [chatLoading, setChatLoading] = useState(false);
   const chatEndRef = useRef(null);
+  // issued by the server with the first reply; keys this chat's memory
+  const conversationIdRef = useRef(null);
 
   useEffect(() => {
     if (chatEndRef.current) chatEndRef.current.scrollIntoView({ behavior: "smooth" });
@@ -186,12 +188,13 @@ export default function App() {
       const res = await fetch(API("/api/chat/message"), {
         method: "POST",
         headers: { "Content-Type": "application/json" },
-        body: JSON.stringify({ userId: username, text })
+        body: JSON.stringify({ userId: username, text, conversationId: conversationIdRef.current })
       });
 
       let reply;
       try {
         const j = await res.json();
+        if (j.conversationId) conversationIdRef.current = j.conversationId;
         reply = j.reply || j.text || JSON.stringify(j);
       } catch {
         reply = await res.text();